@@ -0,0 +1,117 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+/**
+ * The per-frame analysis: the peak searches on their own, and the whole
+ * phase-vocoder pass of {@link FrameAnalyzer}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalyzeBenchmark {
+
+    // how many notes are sounding in the frame
+    @Param({ "0", "4", "32" })
+    public int peaks;
+
+    private double[] power;
+    private double[] p;
+    private double[] fp;
+    private double[] ph0;
+    private double[] ph1;
+    private double[] dphi;
+    private byte[] vel;
+    private FrameAnalyzer scanAnalyzer;
+    private FrameAnalyzer heapAnalyzer;
+
+    @Setup
+    public void setup() {
+        power = Synthetic.power(peaks, 4);
+        p = new double[power.length];
+        ph0 = Synthetic.phase(5);
+        ph1 = Synthetic.phase(6);
+        dphi = new double[power.length];
+        vel = new byte[128];
+        // bin centre frequencies, as used without the phase correction
+        fp = new double[power.length];
+        for (int i = 0; i < fp.length; i++) {
+            fp[i] = i / Synthetic.t0();
+        }
+        scanAnalyzer = Synthetic.analyzer(PeakSearch.SCAN);
+        heapAnalyzer = Synthetic.analyzer(PeakSearch.HEAP);
+    }
+
+    @Benchmark
+    public byte[] scan() {
+        // the search zeroes what it takes, so start from a fresh copy
+        System.arraycopy(power, 0, p, 0, power.length);
+        Analyze.note_intensity(p, fp, -5.0, 1.0, Synthetic.i0(), Synthetic.i1(), Synthetic.t0(), vel,
+                MidiFreqRelations::get_note);
+        return vel;
+    }
+
+    @Benchmark
+    public byte[] heap() {
+        System.arraycopy(power, 0, p, 0, power.length);
+        Analyze.note_intensity_heap(p, fp, -5.0, 1.0, Synthetic.i0(), Synthetic.i1(), Synthetic.t0(), vel,
+                MidiFreqRelations::get_note);
+        return vel;
+    }
+
+    @Benchmark
+    public byte[] frameScan() {
+        System.arraycopy(power, 0, p, 0, power.length);
+        scanAnalyzer.analyze(p, ph1, ph0, dphi, vel);
+        return vel;
+    }
+
+    @Benchmark
+    public byte[] frameHeap() {
+        System.arraycopy(power, 0, p, 0, power.length);
+        heapAnalyzer.analyze(p, ph1, ph0, dphi, vel);
+        return vel;
+    }
+
+}
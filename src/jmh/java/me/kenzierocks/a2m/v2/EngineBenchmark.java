@@ -0,0 +1,107 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+
+/**
+ * One block of frames through each {@link Engine}, for the full note range
+ * and for two octaves of it. The longer frame length is what {@link Engine#FFT}
+ * needs to resolve the bass, which {@link Engine#CONSTANT_Q} picks by itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+    private static final int FRAMES = 8;
+
+    @Param({ "FFT", "GOERTZEL", "CONSTANT_Q", "SLIDING_DFT" })
+    public Engine engine;
+
+    @Param({ "4096", "32768" })
+    public int len;
+
+    // notelow-notetop
+    @Param({ "28-103", "60-84" })
+    public String notes;
+
+    // only Engine.FFT has a single-precision variant
+    @Param({ "false", "true" })
+    public boolean singlePrecision;
+
+    private ProcessorContext context;
+    private AnalysisEngine analysis;
+    private Frame previous;
+    private Frame[] frames;
+    private byte[][] vel;
+
+    @Setup
+    public void setup() {
+        String[] range = notes.split("-");
+        ProcessorConfig config = ProcessorConfig.builder().singlePrecision(singlePrecision).build();
+        context = new ProcessorContext(config.planner(), 0);
+        analysis = engine.create(config, context, len, Synthetic.HOP, Synthetic.SAMPLE_RATE, -5.0, 1.0,
+                Integer.parseInt(range[0]), Integer.parseInt(range[1]));
+        double[] signal = Synthetic.signal(analysis.len() + FRAMES * Synthetic.HOP, 10);
+        previous = (dst, n) -> System.arraycopy(signal, 0, dst, 0, n);
+        frames = new Frame[FRAMES];
+        for (int f = 0; f < FRAMES; f++) {
+            int start = (f + 1) * Synthetic.HOP;
+            frames[f] = (dst, n) -> System.arraycopy(signal, start, dst, 0, n);
+        }
+        vel = new byte[FRAMES][128];
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[][] block() throws Exception {
+        analysis.analyze(previous, frames, FRAMES, vel);
+        return vel;
+    }
+
+}
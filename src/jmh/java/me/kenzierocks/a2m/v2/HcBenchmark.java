@@ -0,0 +1,83 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HcBenchmark {
+
+    private DoubleBuffer freq;
+    private double den;
+    private double[] amp2;
+    private double[] phs;
+
+    @Setup
+    public void setup() {
+        // any half-complex data will do, the loop does not branch on values
+        double[] data = Synthetic.signal(Synthetic.LEN, 2);
+        freq = ByteBuffer.allocateDirect(Synthetic.LEN * Double.BYTES).order(ByteOrder.nativeOrder())
+                .asDoubleBuffer();
+        freq.put(data).flip();
+        den = StandardWindows.HANNING.init_den(Synthetic.LEN);
+        amp2 = new double[Synthetic.LEN / 2 + 1];
+        phs = new double[Synthetic.LEN / 2 + 1];
+    }
+
+    @Benchmark
+    public double[] to_polar2() {
+        freq.rewind();
+        HC.to_polar2(Synthetic.LEN, freq, 0, den, amp2, phs);
+        return phs;
+    }
+
+    @Benchmark
+    public double[] to_polar2_band() {
+        // the bins the default note range analyzes
+        freq.rewind();
+        HC.to_polar2(Synthetic.LEN, freq, 0, den, amp2, phs, Synthetic.i0() - 1, Synthetic.i1() + 1);
+        return phs;
+    }
+
+}
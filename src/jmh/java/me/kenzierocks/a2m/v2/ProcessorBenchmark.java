@@ -0,0 +1,100 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * A whole conversion of ten seconds of synthetic audio, from WAV bytes to
+ * MIDI bytes. Workers and FFT plans are kept across runs, as in batch mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessorBenchmark {
+
+    @Param({ "DECODED", "STREAMING", "MAPPED" })
+    public String input;
+
+    @Param({ "SCAN", "HEAP" })
+    public PeakSearch peakSearch;
+
+    private byte[] wav;
+    private Path wavFile;
+    private ProcessorConfig config;
+    private ProcessorContext context;
+
+    @Setup
+    public void setup() throws IOException {
+        wav = Synthetic.wav(Synthetic.signal((int) Synthetic.SAMPLE_RATE * 10, 9));
+        wavFile = Files.createTempFile("a2m-bench", ".wav");
+        Files.write(wavFile, wav);
+        config = ProcessorConfig.builder()
+                .streaming(input.equals("STREAMING"))
+                .peakSearch(peakSearch)
+                .build();
+        context = new ProcessorContext(config.planner(), 0);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        Files.deleteIfExists(wavFile);
+    }
+
+    @Benchmark
+    public void process() throws Exception {
+        Processor processor;
+        if (input.equals("MAPPED")) {
+            processor = new Processor(wavFile, ByteStreams.nullOutputStream(), config);
+        } else {
+            processor = new Processor(new ByteArrayInputStream(wav), ByteStreams.nullOutputStream(), config);
+        }
+        processor.process(context);
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+/**
+ * Reproducible inputs for the benchmarks, shaped like what the pipeline sees
+ * on real music.
+ */
+final class Synthetic {
+
+    static final int LEN = 4096;
+    static final int HOP = LEN / 8;
+    static final float SAMPLE_RATE = 44100;
+    static final int NOTE_LOW = 28;
+    static final int NOTE_TOP = 103;
+
+    static double t0() {
+        return LEN / SAMPLE_RATE;
+    }
+
+    static int i0() {
+        return Math.max(1, (int) (MidiFreqRelations.mid2freq[NOTE_LOW] * t0() - 0.5));
+    }
+
+    static int i1() {
+        return Math.min(LEN / 2 - 1, (int) (MidiFreqRelations.mid2freq[NOTE_TOP] * t0() - 0.5) + 1);
+    }
+
+    static FrameAnalyzer analyzer(PeakSearch peakSearch) {
+        return new FrameAnalyzer(LEN, HOP, SAMPLE_RATE, -5.0, 1.0, i0(), i1(), t0(), peakSearch);
+    }
+
+    /**
+     * Chords of three random notes, changing every quarter second.
+     */
+    static double[] signal(int samples, long seed) {
+        Random random = new Random(seed);
+        double[] out = new double[samples];
+        int chord = (int) (SAMPLE_RATE / 4);
+        for (int start = 0; start < samples; start += chord) {
+            int end = Math.min(samples, start + chord);
+            for (int n = 0; n < 3; n++) {
+                double freq = MidiFreqRelations.mid2freq[NOTE_LOW + random.nextInt(NOTE_TOP - NOTE_LOW)];
+                double amp = 0.1 + 0.2 * random.nextDouble();
+                for (int i = start; i < end; i++) {
+                    out[i] += amp * Math.sin(2 * Math.PI * freq * i / SAMPLE_RATE);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 16-bit mono WAV of {@code samples}.
+     */
+    static byte[] wav(double[] samples) throws IOException {
+        byte[] pcm = new byte[samples.length * 2];
+        ByteBuffer buf = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN);
+        for (double s : samples) {
+            buf.putShort((short) Math.round(Math.max(-1, Math.min(1, s)) * Short.MAX_VALUE));
+        }
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, samples.length),
+                AudioFileFormat.Type.WAVE, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A power spectrum of {@code LEN / 2 + 1} bins with {@code peaks} note
+     * peaks over a noise floor.
+     */
+    static double[] power(int peaks, long seed) {
+        Random random = new Random(seed);
+        double[] p = new double[LEN / 2 + 1];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = 1e-9 * random.nextDouble();
+        }
+        int i0 = i0();
+        int i1 = i1();
+        for (int n = 0; n < peaks; n++) {
+            int center = i0 + random.nextInt(i1 - i0);
+            double amp = 1e-3 + random.nextDouble();
+            for (int d = -2; d <= 2; d++) {
+                p[center + d] += amp / (1 + d * d * 4);
+            }
+        }
+        return p;
+    }
+
+    static double[] phase(long seed) {
+        Random random = new Random(seed);
+        double[] ph = new double[LEN / 2 + 1];
+        for (int i = 0; i < ph.length; i++) {
+            ph[i] = Math.PI * (2 * random.nextDouble() - 1);
+        }
+        return ph;
+    }
+
+    /**
+     * {@code count} events as check() leaves them: sorted by step, each note
+     * on matched by a later off, with a mix of short, quiet and octave notes.
+     */
+    static Notes events(int count, long seed) {
+        Random random = new Random(seed);
+        Notes notes = new Notes();
+        int[] off_step = new int[128];
+        int step = 0;
+        while (notes.count() < count) {
+            step += random.nextInt(3);
+            for (int note = 0; note < 128; note++) {
+                if (off_step[note] > 0 && off_step[note] <= step) {
+                    notes.append(step, false, (byte) note, (byte) 64);
+                    off_step[note] = 0;
+                }
+            }
+            int note = NOTE_LOW + random.nextInt(NOTE_TOP - NOTE_LOW);
+            if (off_step[note] == 0) {
+                notes.append(step, true, (byte) note, (byte) (1 + random.nextInt(127)));
+                off_step[note] = step + 1 + random.nextInt(8);
+            }
+        }
+        return notes;
+    }
+
+    private Synthetic() {
+    }
+
+}
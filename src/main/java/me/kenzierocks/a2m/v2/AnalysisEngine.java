@@ -0,0 +1,79 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+
+/**
+ * Turns frames of samples into the note velocities {@link Notes#check}
+ * consumes. Called from several workers at once, each with its own block of
+ * consecutive frames.
+ */
+public interface AnalysisEngine {
+
+    /**
+     * The samples in each frame.
+     */
+    int len();
+
+    /**
+     * Samples of silence read before and after the input. Engines with frames
+     * longer than they were asked for use it to keep the same number of
+     * frames, centered on the same samples, and so the timing of the notes.
+     */
+    default int padding() {
+        return 0;
+    }
+
+    /**
+     * Analyzes the first {@code count} frames of {@code frames} into
+     * {@code vel}, one array of 128 velocities per frame.
+     * 
+     * @param previous
+     *            the frame before the block, or {@code null} for the first
+     *            block
+     */
+    void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) throws Exception;
+
+    /**
+     * The per-frame analysis this engine finishes with, or {@code null} if it
+     * has none. Only engines with one can {@link #analyze(Frame, Frame[], int,
+     * byte[][], float[][]) store spectra}.
+     */
+    default FrameAnalyzer analyzer() {
+        return null;
+    }
+
+    /**
+     * {@link #analyze(Frame, Frame[], int, byte[][])}, also storing the
+     * corrected band of each frame into {@code spectra} with
+     * {@link FrameAnalyzer#store}.
+     */
+    default void analyze(Frame previous, Frame[] frames, int count, byte[][] vel, float[][] spectra)
+            throws Exception {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not store spectra");
+    }
+
+}
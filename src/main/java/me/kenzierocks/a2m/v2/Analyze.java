@@ -24,20 +24,28 @@
  */
 package me.kenzierocks.a2m.v2;
 
+import java.util.function.DoubleToIntFunction;
+
 import me.kenzierocks.a2m.MidiFreqRelations;
 
 public class Analyze {
 
     public static void note_intensity(double[] p, double[] fp, double cut_ratio,
             double rel_cut_ratio, int i0, int i1, double t0, byte[] intens) {
+        note_intensity(p, fp, cut_ratio, rel_cut_ratio, i0, i1, t0, intens, MidiFreqRelations::get_note);
+    }
+
+    /**
+     * @param get_note
+     *            maps frequencies to notes like
+     *            {@link MidiFreqRelations#get_note}
+     */
+    public static void note_intensity(double[] p, double[] fp, double cut_ratio,
+            double rel_cut_ratio, int i0, int i1, double t0, byte[] intens, DoubleToIntFunction get_note) {
 
         int i;
         int imax;
         double max;
-        double x;
-        double freq; /* freq of peak in power */
-        double f;
-        int in;
         double av;
 
         // clear
@@ -76,31 +84,77 @@ public class Analyze {
             if (imax == -1) // no peak found
                 break;
 
-            // get midi note # from imax (FFT freq index)
-            if (fp == null) {
-                freq = (double) imax / t0;
-            } else {
-                freq = fp[imax];
-                // fprintf (stderr, "freq = %f, %f\n", freq, (double)imax / t0);
+            peak_intensity(p, fp, imax, cut_ratio, i0, i1, t0, intens, get_note);
+
+            // subtract peak upto minimum in both sides
+            p[imax] = 0.0;
+            // right side
+            for (i = imax + 1; p[i] != 0.0 && i < (i1 - 1) && p[i] >= p[i + 1]; i++)
+                p[i] = 0.0;
+            if (i == i1 - 1)
+                p[i] = 0.0;
+            // left side
+            for (i = imax - 1; p[i] != 0.0 && i > i0 && p[i - 1] <= p[i]; i--)
+                p[i] = 0.0;
+            if (i == i0)
+                p[i] = 0.0;
+        }
+    }
+
+    /**
+     * Same as {@link #note_intensity}, but collects the local maxima of the
+     * band in one pass and takes them strongest first from a heap, instead of
+     * rescanning the band for every peak.
+     * 
+     * <p>
+     * Powers only ever drop to zero, so a maximum stays one until it is
+     * cleared, and the strongest bin left is always a maximum. Taking them by
+     * power and then by lowest index gives the peaks in the same order as the
+     * scan.
+     * </p>
+     */
+    public static void note_intensity_heap(double[] p, double[] fp, double cut_ratio,
+            double rel_cut_ratio, int i0, int i1, double t0, byte[] intens, DoubleToIntFunction get_note) {
+
+        int i;
+        int imax;
+        int lo;
+        int hi;
+        double threshold;
+        double av;
+
+        // clear
+        for (i = 0; i < 128; i++) {
+            intens[i] = 0;
+        }
+
+        // calc average power
+        if (!Extern.abs_flg) {
+            av = 0.0;
+            for (i = i0; i < i1; i++) {
+                av += p[i];
             }
-            in = MidiFreqRelations.get_note(freq); // midi note #
-            // check the range of the note
-            if (in >= i0 && in <= i1) {
-                // if second time on same note, skip
-                if (intens[in] == 0) {
-                    /*
-                     * scale intensity (velocity) of the peak power range from
-                     * 10^cut_ratio to 10^0 is scaled
-                     */
-                    x = 127.0 / (-cut_ratio)
-                            * (Math.log10(p[imax]) - cut_ratio);
-                    if (x >= 128.0) {
-                        intens[in] = 127;
-                    } else if (x > 0) {
-                        intens[in] = (byte) x;
-                    }
-                }
+            av /= (double) (i1 - i0);
+            threshold = av * Math.pow(10.0, rel_cut_ratio);
+        } else {
+            threshold = Math.pow(10.0, cut_ratio);
+        }
+
+        PeakHeap heap = PeakHeap.get();
+        for (i = i0; i < i1; i++) {
+            if (is_peak(p, i, i0, i1, threshold)) {
+                heap.push(p[i], i);
             }
+        }
+
+        while (heap.size() > 0) {
+            imax = heap.pop();
+            if (p[imax] == 0.0) {
+                // taken by the skirt of a stronger peak
+                continue;
+            }
+
+            peak_intensity(p, fp, imax, cut_ratio, i0, i1, t0, intens, get_note);
 
             // subtract peak upto minimum in both sides
             p[imax] = 0.0;
@@ -109,11 +163,62 @@ public class Analyze {
                 p[i] = 0.0;
             if (i == i1 - 1)
                 p[i] = 0.0;
+            hi = p[i] == 0.0 ? i : i - 1;
             // left side
             for (i = imax - 1; p[i] != 0.0 && i > i0 && p[i - 1] <= p[i]; i--)
                 p[i] = 0.0;
             if (i == i0)
                 p[i] = 0.0;
+            lo = p[i] == 0.0 ? i : i + 1;
+
+            // the walks stop next to a stronger bin, so the bins beside the
+            // cleared range should not be maxima now; checked regardless, as
+            // the heap must hold every maximum left
+            if (lo - 1 >= i0 && is_peak(p, lo - 1, i0, i1, threshold)) {
+                heap.push(p[lo - 1], lo - 1);
+            }
+            if (hi + 1 < i1 && is_peak(p, hi + 1, i0, i1, threshold)) {
+                heap.push(p[hi + 1], hi + 1);
+            }
+        }
+    }
+
+    private static boolean is_peak(double[] p, int i, int i0, int i1, double threshold) {
+        return p[i] > threshold
+                && (i == i0 || p[i - 1] <= p[i])
+                && (i == i1 - 1 || p[i + 1] <= p[i]);
+    }
+
+    private static void peak_intensity(double[] p, double[] fp, int imax, double cut_ratio,
+            int i0, int i1, double t0, byte[] intens, DoubleToIntFunction get_note) {
+        double x;
+        double freq; /* freq of peak in power */
+        int in;
+
+        // get midi note # from imax (FFT freq index)
+        if (fp == null) {
+            freq = (double) imax / t0;
+        } else {
+            freq = fp[imax];
+            // fprintf (stderr, "freq = %f, %f\n", freq, (double)imax / t0);
+        }
+        in = get_note.applyAsInt(freq); // midi note #
+        // check the range of the note
+        if (in >= i0 && in <= i1) {
+            // if second time on same note, skip
+            if (intens[in] == 0) {
+                /*
+                 * scale intensity (velocity) of the peak power range from
+                 * 10^cut_ratio to 10^0 is scaled
+                 */
+                x = 127.0 / (-cut_ratio)
+                        * (Math.log10(p[imax]) - cut_ratio);
+                if (x >= 128.0) {
+                    intens[in] = 127;
+                } else if (x > 0) {
+                    intens[in] = (byte) x;
+                }
+            }
         }
     }
 
@@ -0,0 +1,154 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts many inputs at once in one JVM, sharing a single
+ * {@link ProcessorContext} between them.
+ */
+public class BatchConverter {
+
+    /**
+     * Lists the regular files of {@code input} if it is a directory, otherwise
+     * reads it as a list of files, one per line. Blank lines and lines
+     * starting with {@code #} are skipped.
+     */
+    public static List<Path> listInputs(Path input) throws Exception {
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> files = Files.list(input)) {
+                return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        Path base = input.toAbsolutePath().getParent();
+        try (Stream<String> lines = Files.lines(input, StandardCharsets.UTF_8)) {
+            return lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(base::resolve)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns {@code input}'s file name with its extension replaced by
+     * {@code .mid}.
+     */
+    public static String outputName(Path input) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + ".mid";
+    }
+
+    private final ProcessorConfig config;
+    private final int jobs;
+    private final int frameBudget;
+
+    /**
+     * @param jobs
+     *            how many inputs are converted at the same time
+     * @param frameBudget
+     *            the most frames in flight across all inputs, or {@code 0} for
+     *            no shared limit
+     */
+    public BatchConverter(ProcessorConfig config, int jobs, int frameBudget) {
+        checkArgument(jobs > 0, "jobs must be positive: %s", jobs);
+        this.config = config;
+        this.jobs = jobs;
+        this.frameBudget = frameBudget;
+    }
+
+    /**
+     * Converts every input into {@code outputDir}. A failed input is reported
+     * and skipped.
+     * 
+     * @return the number of inputs that failed
+     */
+    public int convert(List<Path> inputs, Path outputDir) throws Exception {
+        Map<String, Path> outputs = new HashMap<>();
+        for (Path input : inputs) {
+            Path clash = outputs.put(outputName(input), input);
+            checkArgument(clash == null, "%s and %s would both be written to %s", clash, input,
+                    outputName(input));
+        }
+        Files.createDirectories(outputDir);
+
+        FftwWisdom.loadFor(config);
+
+        int failed = 0;
+        ExecutorService files = Executors.newFixedThreadPool(jobs);
+        try (ProcessorContext context = new ProcessorContext(config.planner(), frameBudget)) {
+            List<Future<?>> results = new ArrayList<>(inputs.size());
+            for (Path input : inputs) {
+                Path output = outputDir.resolve(outputName(input));
+                results.add(files.submit(() -> {
+                    try (OutputStream out = Files.newOutputStream(output)) {
+                        new Processor(input, out, config).process(context);
+                    } catch (Exception e) {
+                        Files.deleteIfExists(output);
+                        throw e;
+                    }
+                    System.err.println("Converted " + input + " to " + output);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.err.println("Failed to convert " + inputs.get(i) + ":");
+                    e.getCause().printStackTrace();
+                }
+            }
+            FftPlans plans = context.plans();
+            System.err.printf("FFT plans: %d, holding %,d bytes native%n", plans.planCount(), plans.nativeBytes());
+            if (config.stats()) {
+                context.stats().print(System.err);
+            }
+        } finally {
+            files.shutdown();
+        }
+
+        FftwWisdom.saveFor(config);
+        return failed;
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.nio.DoubleBuffer;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
+/**
+ * A constant-Q transform, computed as in Brown and Puckette: one FFT per
+ * frame, followed by a short spectral kernel per note. Frames are long enough
+ * for the window of the lowest note, so unlike {@link Engine#FFT} every note,
+ * the bass included, is resolved from its neighbours.
+ * 
+ * <p>
+ * The kernel of a note is the spectrum of its window times a complex
+ * exponential at its frequency, so multiplying it with the spectrum of a
+ * frame gives the same power as {@link GoertzelEngine} would over that
+ * window. The spectrum of each kernel is concentrated around the note, and
+ * only the bins from the first to the last above {@link #SPARSITY} of its
+ * peak are kept.
+ * </p>
+ */
+final class ConstantQEngine extends NoteBankEngine {
+
+    // kernel bins weaker than this, relative to the strongest, are dropped
+    private static final double SPARSITY = 1e-3;
+
+    /**
+     * The frame length for a lowest note of {@code notelow}: enough for its
+     * window, rounded up to a power of two for the FFT.
+     */
+    static int frameLength(int len, float sampleRate, int notelow) {
+        int size = size(notelow, sampleRate);
+        return Math.max(len, Integer.highestOneBit(size - 1) << 1);
+    }
+
+    private final int padding;
+    private final FftPlans plans;
+    // per note, from notelow: the kernel over the bins from kernelFrom,
+    // conjugated and divided by len
+    private final int[] kernelFrom;
+    private final double[][] kernelRe;
+    private final double[][] kernelIm;
+
+    /**
+     * @param len
+     *            the frame length asked for. Frames are made longer as
+     *            needed, keeping the same centers.
+     */
+    ConstantQEngine(Window window, int len, float sampleRate, double cut_ratio, double rel_cut_ratio,
+            int notelow, int notetop, FftPlans plans, PipelineStats stats) {
+        super(window, frameLength(len, sampleRate, notelow), sampleRate, cut_ratio, rel_cut_ratio, notelow,
+                notetop, stats);
+        this.padding = (this.len - len) / 2;
+        this.plans = plans;
+        this.kernelFrom = new int[notes];
+        this.kernelRe = new double[notes][];
+        this.kernelIm = new double[notes][];
+        for (int n = 0; n < notes; n++) {
+            kernel(n);
+        }
+    }
+
+    private void kernel(int n) {
+        int half = len / 2;
+        try (FftPlans.Lease plan = plans.lease(len, 2)) {
+            // the real and imaginary parts of the kernel, transformed apart
+            DoubleBuffer input = plan.input();
+            double[] w = table[n];
+            int o = offset[n];
+            for (int i = 0; i < len; i++) {
+                int j = i - o;
+                input.put(i, j >= 0 && j < w.length ? w[j] * Math.cos(omega[n] * j) : 0.0);
+                input.put(len + i, j >= 0 && j < w.length ? w[j] * Math.sin(omega[n] * j) : 0.0);
+            }
+            plan.execute();
+            DoubleBuffer output = plan.output();
+
+            // kernel = A + jB, from the halfcomplex spectra of A and B. DC and
+            // Nyquist are left out, as no note reaches them.
+            double[] re = new double[half];
+            double[] im = new double[half];
+            double peak = 0.0;
+            for (int k = 1; k < half; k++) {
+                double ar = output.get(k);
+                double ai = output.get(len - k);
+                double br = output.get(len + k);
+                double bi = output.get(2 * len - k);
+                re[k] = ar - bi;
+                im[k] = ai + br;
+                peak = Math.max(peak, re[k] * re[k] + im[k] * im[k]);
+            }
+            double threshold = SPARSITY * SPARSITY * peak;
+            int from = 1;
+            while (re[from] * re[from] + im[from] * im[from] < threshold) {
+                from++;
+            }
+            int to = half;
+            while (re[to - 1] * re[to - 1] + im[to - 1] * im[to - 1] < threshold) {
+                to--;
+            }
+            kernelFrom[n] = from;
+            kernelRe[n] = new double[to - from];
+            kernelIm[n] = new double[to - from];
+            for (int k = from; k < to; k++) {
+                // by Parseval, with FFTW's unnormalized transforms
+                kernelRe[n][k - from] = re[k] / len;
+                kernelIm[n][k - from] = im[k] / len;
+            }
+        }
+    }
+
+    /**
+     * The number of spectrum bins the kernel of {@code note} covers.
+     */
+    int kernelSize(int note) {
+        return kernelRe[note - notelow].length;
+    }
+
+    @Override
+    public int padding() {
+        return padding;
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) throws Exception {
+        // short blocks still use the full plan, to avoid re-planning
+        try (FftPlans.Lease plan = plans.lease(len, frames.length)) {
+            DoubleBuffer input = plan.input();
+            DoubleBuffer output = plan.output();
+
+            // the windows are in the kernels, so the frames go in as they are
+            double[] samples = WindowHelper.getWindowingArray(len);
+            long time = System.nanoTime();
+            for (int f = 0; f < count; f++) {
+                frames[f].read(samples, len);
+                input.put(samples, 0, len);
+                time = stats.record(Stage.WINDOW, time);
+            }
+
+            plan.execute();
+            time = stats.record(Stage.FFT, time);
+
+            double[] p = WindowHelper.getAnalysisArrays(1, notes)[0];
+            for (int f = 0; f < count; f++) {
+                power(output, f * len, p);
+                time = stats.record(Stage.BANK, time);
+                intensity(p, vel[f]);
+                time = stats.record(Stage.PEAKS, time);
+            }
+        }
+    }
+
+    /**
+     * Fills {@code p}, from index 0 for {@code notelow}, with the power of
+     * each note in the halfcomplex spectrum at {@code base} of
+     * {@code spectrum}.
+     */
+    void power(DoubleBuffer spectrum, int base, double[] p) {
+        for (int n = 0; n < notes; n++) {
+            double[] kr = kernelRe[n];
+            double[] ki = kernelIm[n];
+            int from = kernelFrom[n];
+            double re = 0.0;
+            double im = 0.0;
+            for (int k = 0; k < kr.length; k++) {
+                double xr = spectrum.get(base + from + k);
+                double xi = spectrum.get(base + len - from - k);
+                // x times the conjugate of the kernel
+                re += xr * kr[k] + xi * ki[k];
+                im += xi * kr[k] - xr * ki[k];
+            }
+            p[n] = (re * re + im * im) / den[n];
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+/**
+ * Low-passes another source and keeps one sample in {@code factor}, so notes
+ * up to {@code notetop} can be analyzed at a fraction of the rate.
+ * 
+ * <p>
+ * The low-pass is a {@link StandardWindows#KAISER} windowed sinc, passing a
+ * little above {@code notetop} and stopping before anything that would fold
+ * back onto the notes. Like a polyphase decimator, only the kept samples are
+ * filtered. The filter is linear phase, and each kept sample is centered on
+ * the input sample it replaces.
+ * </p>
+ */
+final class Decimator implements SampleSource {
+
+    // the pass band edge, relative to the top note
+    private static final double PASS = 1.25;
+    // the attenuation KAISER's beta is good for, in dB
+    private static final double STOP_DB = 86;
+    private static final int BLOCK = 16 * 1024;
+
+    /**
+     * The largest power of two to decimate by that leaves a stop band at
+     * least as wide as the pass band, and still divides {@code hop}.
+     * 
+     * @return the factor, {@code 1} if the rate is already too low
+     */
+    static int factor(float sampleRate, int notetop, int hop) {
+        double top = MidiFreqRelations.mid2freq[notetop];
+        int factor = 1;
+        while (hop % (factor * 2) == 0 && stopEdge(sampleRate, factor * 2, top) >= 2 * PASS * top) {
+            factor *= 2;
+        }
+        return factor;
+    }
+
+    // the lowest frequency that folds back onto the notes
+    private static double stopEdge(float sampleRate, int factor, double top) {
+        return sampleRate / factor - top;
+    }
+
+    private final SampleSource source;
+    private final int factor;
+    private final double[] taps;
+    // the taps before the centre
+    private final int half;
+    // the last taps - 1 samples, then those read since
+    private final double[] block;
+    private final DoubleBuffer blockBuffer;
+    private int filled;
+    // the last sample of the next kept one's taps
+    private int next;
+    private boolean ended;
+
+    Decimator(SampleSource source, float sampleRate, int factor, int notetop) {
+        checkArgument(factor > 1, "factor must be more than 1: %s", factor);
+        this.source = source;
+        this.factor = factor;
+
+        double top = MidiFreqRelations.mid2freq[notetop];
+        double pass = PASS * top;
+        double stop = stopEdge(sampleRate, factor, top);
+        double width = 2 * Math.PI * (stop - pass) / sampleRate;
+        // Kaiser's estimate of the length, made odd to have a centre
+        int n = (int) Math.ceil((STOP_DB - 7.95) / (2.285 * width)) + 1;
+        n |= 1;
+        double cutoff = (pass + stop) / sampleRate;
+        this.taps = new double[n];
+        this.half = n / 2;
+        double sum = 0;
+        for (int t = 0; t < n; t++) {
+            double x = cutoff * (t - half);
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            taps[t] = cutoff * sinc * StandardWindows.KAISER.apply(t, n);
+            sum += taps[t];
+        }
+        // unity gain at DC
+        for (int t = 0; t < n; t++) {
+            taps[t] /= sum;
+        }
+
+        this.block = new double[BLOCK + n];
+        this.blockBuffer = DoubleBuffer.wrap(block);
+        // silence before the start, for the first kept sample's taps
+        this.filled = half;
+        this.next = n - 1;
+    }
+
+    /**
+     * The number of taps of the low-pass.
+     */
+    int taps() {
+        return taps.length;
+    }
+
+    @Override
+    public int read(DoubleBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        while (true) {
+            int kept = 0;
+            while (next < filled && dst.hasRemaining()) {
+                dst.put(filter(next - taps.length + 1));
+                next += factor;
+                kept++;
+            }
+            compact();
+            if (kept > 0) {
+                return kept;
+            }
+            if (ended) {
+                return -1;
+            }
+            // enough to fill dst, and no more
+            blockBuffer.limit((int) Math.min(block.length, next + (long) (dst.remaining() - 1) * factor + 1));
+            blockBuffer.position(filled);
+            int n = source.read(blockBuffer);
+            if (n < 0) {
+                // silence after the end, for the last kept samples' taps
+                ended = true;
+                Arrays.fill(block, filled, filled + half, 0.0);
+                filled += half;
+            } else {
+                filled += n;
+            }
+        }
+    }
+
+    private double filter(int from) {
+        double[] x = block;
+        double[] h = taps;
+        // the taps are symmetric, so each multiplies a pair of samples, in
+        // four sums so the adds don't wait on each other
+        int last = from + h.length - 1;
+        double s0 = h[half] * x[from + half];
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int t = 0;
+        for (; t + 3 < half; t += 4) {
+            s0 += h[t] * (x[from + t] + x[last - t]);
+            s1 += h[t + 1] * (x[from + t + 1] + x[last - t - 1]);
+            s2 += h[t + 2] * (x[from + t + 2] + x[last - t - 2]);
+            s3 += h[t + 3] * (x[from + t + 3] + x[last - t - 3]);
+        }
+        for (; t < half; t++) {
+            s0 += h[t] * (x[from + t] + x[last - t]);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Drops the samples no kept sample needs any more.
+     */
+    private void compact() {
+        int drop = next - (taps.length - 1);
+        if (drop <= 0) {
+            return;
+        }
+        System.arraycopy(block, drop, block, 0, filled - drop);
+        filled -= drop;
+        next -= drop;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+/**
+ * How frames are turned into note velocities.
+ */
+public enum Engine {
+    /**
+     * A full spectrum per frame, with phase-vocoder correction and a peak
+     * search, as in WaoN.
+     */
+    FFT {
+
+        @Override
+        public AnalysisEngine create(ProcessorConfig config, ProcessorContext context, int len, int hop,
+                float sampleRate, double cut_ratio, double rel_cut_ratio, int notelow, int notetop) {
+            FrameAnalyzer analyzer = analyzer(config, len, hop, sampleRate, cut_ratio, rel_cut_ratio, notelow,
+                    notetop);
+            if (config.singlePrecision()) {
+                return new FloatFftEngine(config.window(), len, analyzer, context.plans(), context.stats());
+            }
+            return new FftEngine(config.window(), len, analyzer, context.plans(), context.stats());
+        }
+
+        @Override
+        public boolean storesSpectra() {
+            return true;
+        }
+
+    },
+    /**
+     * A Goertzel resonator per note, with a window sized for the note.
+     * Cheaper than {@link #FFT} for narrow note ranges.
+     */
+    GOERTZEL {
+
+        @Override
+        public AnalysisEngine create(ProcessorConfig config, ProcessorContext context, int len, int hop,
+                float sampleRate, double cut_ratio, double rel_cut_ratio, int notelow, int notetop) {
+            return new GoertzelEngine(config.window(), len, sampleRate, cut_ratio, rel_cut_ratio, notelow,
+                    notetop, context.stats());
+        }
+
+    },
+    /**
+     * A constant-Q transform: one FFT per frame and a sparse kernel per note,
+     * with frames long enough to resolve the lowest note. Frames keep the
+     * same centers, so notes keep their timing.
+     */
+    CONSTANT_Q {
+
+        @Override
+        public AnalysisEngine create(ProcessorConfig config, ProcessorContext context, int len, int hop,
+                float sampleRate, double cut_ratio, double rel_cut_ratio, int notelow, int notetop) {
+            return new ConstantQEngine(config.window(), len, sampleRate, cut_ratio, rel_cut_ratio, notelow,
+                    notetop, context.plans(), context.stats());
+        }
+
+    },
+    /**
+     * The analysis of {@link #FFT}, with the band of each spectrum slid along
+     * from the frame before instead of transformed again. Cheaper than
+     * {@link #FFT} only for narrow note ranges.
+     */
+    SLIDING_DFT {
+
+        @Override
+        public AnalysisEngine create(ProcessorConfig config, ProcessorContext context, int len, int hop,
+                float sampleRate, double cut_ratio, double rel_cut_ratio, int notelow, int notetop) {
+            FrameAnalyzer analyzer = analyzer(config, len, hop, sampleRate, cut_ratio, rel_cut_ratio, notelow,
+                    notetop);
+            return new SlidingDftEngine(config.window(), len, hop, analyzer, context.plans(), context.stats());
+        }
+
+        @Override
+        public boolean storesSpectra() {
+            return true;
+        }
+
+    };
+
+    static FrameAnalyzer analyzer(ProcessorConfig config, int len, int hop, float sampleRate,
+            double cut_ratio, double rel_cut_ratio, int notelow, int notetop) {
+        double t0 = ((double) len) / sampleRate;
+
+        /* set range to analyse (search notes) */
+        /* -- after 't0' is calculated */
+        int i0 = (int) (MidiFreqRelations.mid2freq[notelow] * t0 - 0.5);
+        int i1 = (int) (MidiFreqRelations.mid2freq[notetop] * t0 - 0.5) + 1;
+        if (i0 <= 0) {
+            i0 = 1; // i0=0 means DC component (frequency = 0)
+        }
+        if (i1 >= (len / 2)) {
+            i1 = len / 2 - 1;
+        }
+        return new FrameAnalyzer(len, hop, sampleRate, cut_ratio, rel_cut_ratio, i0, i1, t0,
+                config.peakSearch());
+    }
+
+    /**
+     * Whether the engines created finish with a {@link FrameAnalyzer}, and so
+     * can store their spectra in a {@link SpectralCache}.
+     */
+    public boolean storesSpectra() {
+        return false;
+    }
+
+    /**
+     * Creates the engine for frames of {@code len} samples, {@code hop}
+     * apart, picking notes from {@code notelow} to {@code notetop}. The engine
+     * may read longer frames, see {@link AnalysisEngine#padding()}.
+     */
+    public abstract AnalysisEngine create(ProcessorConfig config, ProcessorContext context, int len, int hop,
+            float sampleRate, double cut_ratio, double rel_cut_ratio, int notelow, int notetop);
+
+}
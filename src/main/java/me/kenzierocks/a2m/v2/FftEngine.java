@@ -0,0 +1,147 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.nio.DoubleBuffer;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
+/**
+ * The WaoN analysis: windows and transforms a block of frames with one batched
+ * plan, then runs each spectrum through a {@link FrameAnalyzer}. The frame
+ * before the block is transformed again for its phase.
+ */
+final class FftEngine implements AnalysisEngine {
+
+    private final Window window;
+    private final int len;
+    private final double den;
+    private final FrameAnalyzer analyzer;
+    private final FftPlans plans;
+    private final PipelineStats stats;
+
+    FftEngine(Window window, int len, FrameAnalyzer analyzer, FftPlans plans, PipelineStats stats) {
+        this.window = window;
+        this.len = len;
+        this.den = window.init_den(len);
+        this.analyzer = analyzer;
+        this.plans = plans;
+        this.stats = stats;
+    }
+
+    @Override
+    public int len() {
+        return len;
+    }
+
+    @Override
+    public FrameAnalyzer analyzer() {
+        return analyzer;
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) throws Exception {
+        analyze(previous, frames, count, vel, null);
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel, float[][] spectra)
+            throws Exception {
+        // short blocks still use the full plan, to avoid re-planning
+        try (FftPlans.Lease plan = plans.lease(len, frames.length + 1)) {
+            DoubleBuffer input = plan.input();
+            DoubleBuffer output = plan.output();
+
+            double[] samples = WindowHelper.getWindowingArray(len);
+            long time = System.nanoTime();
+            if (previous != null) {
+                previous.read(samples, len);
+                window.windowing(len, samples, 1, input);
+                time = stats.record(Stage.WINDOW, time);
+            } else {
+                // the first slot is transformed but unused
+                input.position(len);
+            }
+            for (int f = 0; f < count; f++) {
+                frames[f].read(samples, len);
+                window.windowing(len, samples, 1, input);
+                time = stats.record(Stage.WINDOW, time);
+            }
+
+            plan.execute();
+            time = stats.record(Stage.FFT, time);
+
+            analyzeSlots(analyzer, stats, len, previous != null, count, vel, spectra, time, (slot, p, ph) -> {
+                output.position(slot * len);
+                HC.to_polar2(len, output, 0, den, p, ph, analyzer.bandFrom(), analyzer.bandTo());
+            });
+        }
+    }
+
+    /**
+     * Converts slot {@code slot} of a transformed block into power and phase
+     * over the band of the analyzer.
+     */
+    interface SlotPolar {
+
+        void polar(int slot, double[] p, double[] ph);
+
+    }
+
+    /**
+     * Runs a transformed block through {@code analyzer}, frame {@code f} being
+     * in slot {@code f + 1} and the frame before the block, if any, in slot 0.
+     * Shared with {@link FloatFftEngine}.
+     */
+    static void analyzeSlots(FrameAnalyzer analyzer, PipelineStats stats, int len, boolean previous, int count,
+            byte[][] vel, float[][] spectra, long time, SlotPolar polar) {
+        double[][] arrays = WindowHelper.getAnalysisArrays(4, len / 2 + 1);
+        double[] p = arrays[0];
+        double[] ph1 = arrays[1];
+        double[] ph0 = arrays[2];
+        double[] dphi = arrays[3];
+        if (previous) {
+            polar.polar(0, p, ph0);
+            time = stats.record(Stage.POLAR, time);
+        }
+        for (int f = 0; f < count; f++) {
+            polar.polar(f + 1, p, ph1);
+            time = stats.record(Stage.POLAR, time);
+            analyzer.correct(p, ph1, previous || f > 0 ? ph0 : null, dphi);
+            if (spectra != null) {
+                analyzer.store(p, dphi, spectra[f]);
+            }
+            time = stats.record(Stage.PHASE, time);
+            analyzer.search(p, dphi, vel[f]);
+            time = stats.record(Stage.PEAKS, time);
+
+            double[] swap = ph0;
+            ph0 = ph1;
+            ph1 = swap;
+        }
+    }
+
+}
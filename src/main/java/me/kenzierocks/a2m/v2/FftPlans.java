@@ -0,0 +1,382 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.fftw3;
+import org.bytedeco.javacpp.fftw3.fftw_plan;
+import org.bytedeco.javacpp.fftw3.fftwf_plan;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Registry of FFTW plans, keyed by size and transform kind, which owns every
+ * native buffer used with them.
+ * 
+ * <p>
+ * Each key is planned once and shared by all threads. Threads execute it on
+ * their own buffers, leased from the registry, through the new-array execute
+ * interface. Everything is released by {@link #close()}.
+ * </p>
+ * 
+ * <p>
+ * Single-precision plans and buffers, from {@code fftwf}, are kept apart from
+ * the double ones and leased with {@link #leaseFloat(int, int)}. They are
+ * real-to-complex rather than halfcomplex, which FFTW runs with SIMD.
+ * </p>
+ */
+public final class FftPlans implements AutoCloseable {
+
+    @AutoValue
+    abstract static class Key {
+
+        static Key of(int length, int howmany, int kind) {
+            return new AutoValue_FftPlans_Key(length, howmany, kind);
+        }
+
+        Key() {
+        }
+
+        abstract int length();
+
+        abstract int howmany();
+
+        abstract int kind();
+
+    }
+
+    /**
+     * A pair of input/output buffers for one plan. Close to give them back.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private final DoublePointer inPtr;
+        private final DoublePointer outPtr;
+        private final DoubleBuffer input;
+        private final DoubleBuffer output;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+            int total = entry.key.length() * entry.key.howmany();
+            this.inPtr = alloc(total);
+            this.outPtr = alloc(total);
+            this.input = inPtr.asBuffer();
+            this.output = outPtr.asBuffer();
+        }
+
+        /**
+         * @return the transform input, {@code howmany} frames back to back
+         */
+        public DoubleBuffer input() {
+            return input;
+        }
+
+        /**
+         * @return the transform output, laid out like the input
+         */
+        public DoubleBuffer output() {
+            return output;
+        }
+
+        public void execute() {
+            fftw_execute_r2r(entry.plan, inPtr, outPtr);
+        }
+
+        @Override
+        public void close() {
+            input.clear();
+            output.clear();
+            entry.free.add(this);
+        }
+
+        private void free() {
+            release(inPtr);
+            release(outPtr);
+        }
+
+    }
+
+    private final class Entry {
+
+        private final Key key;
+        private final fftw_plan plan;
+        private final DoublePointer planIn;
+        private final DoublePointer planOut;
+        private final Queue<Lease> free = new ConcurrentLinkedQueue<>();
+        private final Queue<Lease> all = new ConcurrentLinkedQueue<>();
+
+        Entry(Key key) {
+            this.key = key;
+            int total = key.length() * key.howmany();
+            // planning may scribble over these, so they are kept apart from
+            // the leased buffers
+            planIn = alloc(total);
+            planOut = alloc(total);
+            synchronized (FftwWisdom.PLANNER_LOCK) {
+                // frames are packed back to back, `length` apart
+                plan = fftw3.fftw_plan_many_r2r(1, new IntPointer(new int[] { key.length() }), key.howmany(),
+                        planIn, null, 1, key.length(),
+                        planOut, null, 1, key.length(),
+                        new IntPointer(new int[] { key.kind() }), rigor.flags());
+            }
+            checkNotNull(plan, "failed to allocate fftw plan???");
+        }
+
+        Lease lease() {
+            Lease lease = free.poll();
+            if (lease == null) {
+                lease = new Lease(this);
+                all.add(lease);
+            }
+            return lease;
+        }
+
+        void destroy() {
+            synchronized (FftwWisdom.PLANNER_LOCK) {
+                fftw3.fftw_destroy_plan(plan);
+            }
+            release(planIn);
+            release(planOut);
+            for (Lease lease : all) {
+                lease.free();
+            }
+        }
+
+    }
+
+    /**
+     * A {@link Lease} of single-precision buffers, for a real-to-complex
+     * transform.
+     */
+    public final class FloatLease implements AutoCloseable {
+
+        private final FloatEntry entry;
+        private final FloatPointer inPtr;
+        private final FloatPointer outPtr;
+        private final FloatBuffer input;
+        private final FloatBuffer output;
+
+        private FloatLease(FloatEntry entry) {
+            this.entry = entry;
+            this.inPtr = allocFloat(entry.key.length() * entry.key.howmany());
+            this.outPtr = allocFloat(complexLength(entry.key.length()) * entry.key.howmany());
+            this.input = inPtr.asBuffer();
+            this.output = outPtr.asBuffer();
+        }
+
+        /**
+         * @return the transform input, {@code howmany} frames back to back
+         */
+        public FloatBuffer input() {
+            return input;
+        }
+
+        /**
+         * @return the transform output, {@code length / 2 + 1} interleaved
+         *         complex bins per frame, back to back
+         */
+        public FloatBuffer output() {
+            return output;
+        }
+
+        public void execute() {
+            fftwf_execute_dft_r2c(entry.plan, inPtr, outPtr);
+        }
+
+        @Override
+        public void close() {
+            input.clear();
+            output.clear();
+            entry.free.add(this);
+        }
+
+        private void free() {
+            release(inPtr);
+            release(outPtr);
+        }
+
+    }
+
+    private final class FloatEntry {
+
+        private final Key key;
+        private final fftwf_plan plan;
+        private final FloatPointer planIn;
+        private final FloatPointer planOut;
+        private final Queue<FloatLease> free = new ConcurrentLinkedQueue<>();
+        private final Queue<FloatLease> all = new ConcurrentLinkedQueue<>();
+
+        FloatEntry(Key key) {
+            this.key = key;
+            planIn = allocFloat(key.length() * key.howmany());
+            planOut = allocFloat(complexLength(key.length()) * key.howmany());
+            synchronized (FftwWisdom.PLANNER_LOCK) {
+                // output frames are packed back to back, in complex bins
+                plan = fftw3.fftwf_plan_many_dft_r2c(1, new IntPointer(new int[] { key.length() }), key.howmany(),
+                        planIn, null, 1, key.length(),
+                        planOut, null, 1, key.length() / 2 + 1,
+                        rigor.flags());
+            }
+            checkNotNull(plan, "failed to allocate fftwf plan???");
+        }
+
+        FloatLease lease() {
+            FloatLease lease = free.poll();
+            if (lease == null) {
+                lease = new FloatLease(this);
+                all.add(lease);
+            }
+            return lease;
+        }
+
+        void destroy() {
+            synchronized (FftwWisdom.PLANNER_LOCK) {
+                fftw3.fftwf_destroy_plan(plan);
+            }
+            release(planIn);
+            release(planOut);
+            for (FloatLease lease : all) {
+                lease.free();
+            }
+        }
+
+    }
+
+    private final PlannerRigor rigor;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, FloatEntry> floatEntries = new ConcurrentHashMap<>();
+    private final AtomicLong nativeBytes = new AtomicLong();
+    private volatile boolean closed;
+
+    public FftPlans(PlannerRigor rigor) {
+        this.rigor = rigor;
+    }
+
+    /**
+     * Leases buffers for a real-to-halfcomplex transform of {@code howmany}
+     * frames of {@code length} samples.
+     */
+    public Lease lease(int length, int howmany) {
+        return lease(length, howmany, fftw3.FFTW_R2HC);
+    }
+
+    public Lease lease(int length, int howmany, int kind) {
+        checkState(!closed, "plans are closed");
+        return entries.computeIfAbsent(Key.of(length, howmany, kind), Entry::new).lease();
+    }
+
+    /**
+     * Leases single-precision buffers for a real-to-complex transform of
+     * {@code howmany} frames of {@code length} samples.
+     */
+    public FloatLease leaseFloat(int length, int howmany) {
+        checkState(!closed, "plans are closed");
+        // r2c has no r2r kind, it is always forward
+        return floatEntries.computeIfAbsent(Key.of(length, howmany, fftw3.FFTW_FORWARD), FloatEntry::new).lease();
+    }
+
+    /**
+     * @return the floats of one frame of real-to-complex output
+     */
+    public static int complexLength(int length) {
+        return (length / 2 + 1) * 2;
+    }
+
+    /**
+     * @return the number of bytes of native buffers currently held
+     */
+    public long nativeBytes() {
+        return nativeBytes.get();
+    }
+
+    public int planCount() {
+        return entries.size() + floatEntries.size();
+    }
+
+    /**
+     * Destroys every plan and frees every buffer. All leases must have been
+     * returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Entry entry : entries.values()) {
+            entry.destroy();
+        }
+        entries.clear();
+        for (FloatEntry entry : floatEntries.values()) {
+            entry.destroy();
+        }
+        floatEntries.clear();
+    }
+
+    private DoublePointer alloc(int doubles) {
+        DoublePointer ptr = fftw3.fftw_alloc_real(doubles);
+        checkNotNull(ptr, "failed to allocate fftw buffer");
+        nativeBytes.addAndGet((long) doubles * Double.BYTES);
+        return ptr.capacity(doubles);
+    }
+
+    private void release(DoublePointer ptr) {
+        nativeBytes.addAndGet(-ptr.capacity() * Double.BYTES);
+        fftw3.fftw_free(ptr);
+    }
+
+    private FloatPointer allocFloat(int floats) {
+        FloatPointer ptr = fftw3.fftwf_alloc_real(floats);
+        checkNotNull(ptr, "failed to allocate fftwf buffer");
+        nativeBytes.addAndGet((long) floats * Float.BYTES);
+        return ptr.capacity(floats);
+    }
+
+    private void release(FloatPointer ptr) {
+        nativeBytes.addAndGet(-ptr.capacity() * Float.BYTES);
+        fftw3.fftwf_free(ptr);
+    }
+
+    // split out for profiling purposes
+    private static void fftw_execute_r2r(fftw_plan plan, DoublePointer in, DoublePointer out) {
+        fftw3.fftw_execute_r2r(plan, in, out);
+    }
+
+    private static void fftwf_execute_dft_r2c(fftwf_plan plan, FloatPointer in, FloatPointer out) {
+        fftw3.fftwf_execute_dft_r2c(plan, in, out);
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.bytedeco.javacpp.fftw3;
+
+/**
+ * Persists FFTW wisdom, so plans measured once are instant in later runs.
+ * 
+ * <p>
+ * Single-precision plans have wisdom of their own, kept next to the
+ * double-precision file under the name {@link #path} gives it, so one
+ * {@code --wisdom} path works with and without {@code --float}.
+ * </p>
+ */
+public final class FftwWisdom {
+
+    /**
+     * The FFTW planner is not thread-safe, everything touching it must hold
+     * this lock.
+     */
+    public static final Object PLANNER_LOCK = new Object();
+
+    /**
+     * The file the wisdom of a precision is kept in: {@code file} itself for
+     * double precision, and {@code file} with {@code .f32} appended for single
+     * precision.
+     */
+    public static Path path(Path file, boolean singlePrecision) {
+        return singlePrecision ? file.resolveSibling(file.getFileName() + ".f32") : file;
+    }
+
+    /**
+     * Imports the single- or double-precision wisdom kept for {@code file}, if
+     * it exists. See {@link #path}.
+     * 
+     * @return {@code true} if wisdom was imported
+     */
+    public static boolean load(Path file, boolean singlePrecision) throws IOException {
+        file = path(file, singlePrecision);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        synchronized (PLANNER_LOCK) {
+            int imported = singlePrecision ? fftw3.fftwf_import_wisdom_from_filename(file.toString())
+                    : fftw3.fftw_import_wisdom_from_filename(file.toString());
+            if (imported == 0) {
+                throw new IOException("Invalid FFTW wisdom in " + file);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Exports the accumulated single- or double-precision wisdom to the file
+     * kept for {@code file}, replacing it atomically. See {@link #path}.
+     */
+    public static void save(Path file, boolean singlePrecision) throws IOException {
+        file = path(file, singlePrecision);
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            synchronized (PLANNER_LOCK) {
+                int exported = singlePrecision ? fftw3.fftwf_export_wisdom_to_filename(temp.toString())
+                        : fftw3.fftw_export_wisdom_to_filename(temp.toString());
+                if (exported == 0) {
+                    throw new IOException("Failed to write FFTW wisdom to " + temp);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Imports the wisdom kept for the {@code --wisdom} file of {@code config},
+     * if it has one, at the precision it runs at.
+     */
+    public static void loadFor(ProcessorConfig config) throws IOException {
+        Path file = config.wisdomFile();
+        if (file != null && load(file, config.singlePrecision())) {
+            System.err.println("Loaded FFTW wisdom from " + path(file, config.singlePrecision()));
+        }
+    }
+
+    /**
+     * Exports the wisdom of the precision {@code config} runs at to its
+     * {@code --wisdom} file, if it has one.
+     */
+    public static void saveFor(ProcessorConfig config) throws IOException {
+        if (config.wisdomFile() != null) {
+            save(config.wisdomFile(), config.singlePrecision());
+        }
+    }
+
+    private FftwWisdom() {
+    }
+
+}
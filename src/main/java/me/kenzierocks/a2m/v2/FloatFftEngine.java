@@ -0,0 +1,105 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.nio.FloatBuffer;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
+/**
+ * {@link FftEngine} in single precision: frames are windowed into, and
+ * transformed by, a real-to-complex {@code fftwf} plan. Power and phase are
+ * worked out in double precision, for the band only.
+ */
+final class FloatFftEngine implements AnalysisEngine {
+
+    private final Window window;
+    private final int len;
+    private final double den;
+    private final FrameAnalyzer analyzer;
+    private final FftPlans plans;
+    private final PipelineStats stats;
+
+    FloatFftEngine(Window window, int len, FrameAnalyzer analyzer, FftPlans plans, PipelineStats stats) {
+        this.window = window;
+        this.len = len;
+        this.den = window.init_den(len);
+        this.analyzer = analyzer;
+        this.plans = plans;
+        this.stats = stats;
+    }
+
+    @Override
+    public int len() {
+        return len;
+    }
+
+    @Override
+    public FrameAnalyzer analyzer() {
+        return analyzer;
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) throws Exception {
+        analyze(previous, frames, count, vel, null);
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel, float[][] spectra)
+            throws Exception {
+        // short blocks still use the full plan, to avoid re-planning
+        try (FftPlans.FloatLease plan = plans.leaseFloat(len, frames.length + 1)) {
+            FloatBuffer input = plan.input();
+            FloatBuffer output = plan.output();
+
+            double[] samples = WindowHelper.getWindowingArray(len);
+            long time = System.nanoTime();
+            if (previous != null) {
+                previous.read(samples, len);
+                window.windowing(len, samples, input);
+                time = stats.record(Stage.WINDOW, time);
+            } else {
+                // the first slot is transformed but unused
+                input.position(len);
+            }
+            for (int f = 0; f < count; f++) {
+                frames[f].read(samples, len);
+                window.windowing(len, samples, input);
+                time = stats.record(Stage.WINDOW, time);
+            }
+
+            plan.execute();
+            time = stats.record(Stage.FFT, time);
+
+            FftEngine.analyzeSlots(analyzer, stats, len, previous != null, count, vel, spectra, time,
+                    (slot, p, ph) -> {
+                        output.position(slot * FftPlans.complexLength(len));
+                        HC.c_to_polar2(len, output, den, p, ph, analyzer.bandFrom(), analyzer.bandTo());
+                    });
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.function.DoubleToIntFunction;
+
+/**
+ * Per-frame analysis: the phase-vocoder frequency correction followed by
+ * {@link PeakSearch#note_intensity}. Frames only depend on the phase of the
+ * frame before them, so this runs on the worker that transformed them.
+ */
+public final class FrameAnalyzer {
+
+    private final int len;
+    private final int hop;
+    private final float sampleRate;
+    private final double cut_ratio;
+    private final double rel_cut_ratio;
+    private final int i0;
+    private final int i1;
+    private final double t0;
+    private final PeakSearch peakSearch;
+    private final DoubleToIntFunction get_note;
+    private final int bandFrom;
+    private final int bandTo;
+
+    public FrameAnalyzer(int len, int hop, float sampleRate, double cut_ratio, double rel_cut_ratio, int i0,
+            int i1, double t0, PeakSearch peakSearch) {
+        this.len = len;
+        this.hop = hop;
+        this.sampleRate = sampleRate;
+        this.cut_ratio = cut_ratio;
+        this.rel_cut_ratio = rel_cut_ratio;
+        this.i0 = i0;
+        this.i1 = i1;
+        this.t0 = t0;
+        this.peakSearch = peakSearch;
+        this.get_note = new NoteTable(sampleRate, len)::note;
+        // the search reads one bin past each end of [i0, i1), only to see
+        // whether it is zero, which never changes the result
+        this.bandFrom = Math.max(0, i0 - 1);
+        this.bandTo = Math.min(len / 2, i1) + 1;
+    }
+
+    /**
+     * The first bin {@link #analyze} reads.
+     */
+    public int bandFrom() {
+        return bandFrom;
+    }
+
+    /**
+     * One past the last bin {@link #analyze} reads.
+     */
+    public int bandTo() {
+        return bandTo;
+    }
+
+    /**
+     * The floats {@link #store} writes for each frame: the power and then the
+     * corrected frequency of each bin of the band.
+     */
+    public int spectrumLength() {
+        return 2 * (bandTo - bandFrom);
+    }
+
+    /**
+     * Stores the band of a frame corrected by {@link #correct}, rounded to
+     * single precision, into {@code spectrum}.
+     */
+    public void store(double[] p, double[] dphi, float[] spectrum) {
+        int n = bandTo - bandFrom;
+        for (int i = 0; i < n; i++) {
+            spectrum[i] = (float) p[bandFrom + i];
+            spectrum[n + i] = (float) dphi[bandFrom + i];
+        }
+    }
+
+    /**
+     * Loads a band stored by {@link #store} back into {@code p} and
+     * {@code dphi}, ready for {@link #search}.
+     */
+    public void load(float[] spectrum, double[] p, double[] dphi) {
+        int n = bandTo - bandFrom;
+        for (int i = 0; i < n; i++) {
+            p[bandFrom + i] = spectrum[i];
+            dphi[bandFrom + i] = spectrum[n + i];
+        }
+    }
+
+    /**
+     * Analyzes one frame into {@code vel}, which is {@link #correct} followed
+     * by {@link #search}.
+     * 
+     * <p>
+     * Only the bins from {@link #bandFrom()} to {@link #bandTo()} of the
+     * arrays are used.
+     * </p>
+     * 
+     * @param p
+     *            the power of the frame, destroyed
+     * @param ph1
+     *            the phase of the frame
+     * @param ph0
+     *            the phase of the previous frame, or {@code null} for the
+     *            first frame
+     * @param dphi
+     *            scratch, {@code len / 2 + 1} long
+     */
+    public void analyze(double[] p, double[] ph1, double[] ph0, double[] dphi, byte[] vel) {
+        correct(p, ph1, ph0, dphi);
+        search(p, dphi, vel);
+    }
+
+    /**
+     * Fills {@code dphi} with the corrected frequency of each bin, and
+     * averages {@code p} for the search.
+     */
+    public void correct(double[] p, double[] ph1, double[] ph0, double[] dphi) {
+        // with phase-vocoder correction
+        if (ph0 == null) {
+            // first step, so no ph0[] yet
+            for (int i = bandFrom; i < bandTo; ++i) {
+                // no correction
+                dphi[i] = 0.0;
+            }
+        } else {
+            // freq correction by phase difference
+            for (int i = bandFrom; i < bandTo; ++i) {
+                double twopi = 2.0 * Math.PI;
+                dphi[i] = ph1[i] - ph0[i]
+                        - twopi * (double) i / (double) len * (double) hop;
+                for (; dphi[i] >= Math.PI; dphi[i] -= twopi)
+                    ;
+                for (; dphi[i] < -Math.PI; dphi[i] += twopi)
+                    ;
+
+                // frequency correction
+                // NOTE: freq is (i / len + dphi) * samplerate [Hz]
+                dphi[i] = dphi[i] / twopi / (double) hop;
+
+                // then, average the power for the analysis
+                // (p0 was already backed up from this frame, as in WaoN)
+                double p0 = p[i];
+                p[i] = 0.5 * (Math.sqrt(p[i]) + Math.sqrt(p0));
+                p[i] = p[i] * p[i];
+            }
+        }
+
+        // make corrected frequency (i / len + dphi) * samplerate [Hz]
+        for (int i = bandFrom; i < bandTo; ++i) {
+            dphi[i] = ((double) i / (double) len + dphi[i])
+                    * (double) sampleRate;
+        }
+    }
+
+    /**
+     * Picks the notes out of a frame corrected by {@link #correct}.
+     */
+    public void search(double[] p, double[] dphi, byte[] vel) {
+        peakSearch.note_intensity(p, dphi,
+                cut_ratio, rel_cut_ratio, i0, i1, t0, vel, get_note);
+    }
+
+}
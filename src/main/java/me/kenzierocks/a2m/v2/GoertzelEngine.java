@@ -0,0 +1,176 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
+/**
+ * A bank of Goertzel resonators, one tuned to each note, run over the samples
+ * of each frame. The cost grows with the note range rather than the frame
+ * length.
+ */
+final class GoertzelEngine extends NoteBankEngine {
+
+    // per note, from notelow
+    private final double[] coeff;
+
+    GoertzelEngine(Window window, int len, float sampleRate, double cut_ratio, double rel_cut_ratio,
+            int notelow, int notetop, PipelineStats stats) {
+        super(window, len, sampleRate, cut_ratio, rel_cut_ratio, notelow, notetop, stats);
+        this.coeff = new double[notes];
+        for (int n = 0; n < notes; n++) {
+            coeff[n] = 2.0 * Math.cos(omega[n]);
+        }
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) {
+        double[] samples = WindowHelper.getWindowingArray(len);
+        // the powers, and the resonator state of four notes
+        double[][] scratch = WindowHelper.getAnalysisArrays(2, Math.max(notes, 8));
+        double[] p = scratch[0];
+        double[] state = scratch[1];
+        long time = System.nanoTime();
+        for (int f = 0; f < count; f++) {
+            frames[f].read(samples, len);
+            time = stats.record(Stage.WINDOW, time);
+            power(samples, p, state);
+            time = stats.record(Stage.BANK, time);
+            intensity(p, vel[f]);
+            time = stats.record(Stage.PEAKS, time);
+        }
+    }
+
+    /**
+     * Fills {@code p}, from index 0 for {@code notelow}, with the power of
+     * each note in the frame, scaled like {@link HC#to_polar2}. {@code state}
+     * is scratch space of at least 8 doubles.
+     */
+    void power(double[] samples, double[] p, double[] state) {
+        int n = 0;
+        // four neighbours at a time, so the recurrences do not wait on each
+        // other
+        for (; n + 3 < notes; n += 4) {
+            power4(samples, p, n, state);
+        }
+        for (; n < notes; n++) {
+            state[0] = 0.0;
+            state[1] = 0.0;
+            run(samples, n, offset[n], offset[n] + table[n].length, state, 0);
+            p[n] = power(n, state, 0);
+        }
+    }
+
+    private void power4(double[] samples, double[] p, int n, double[] state) {
+        for (int k = 0; k < 8; k++) {
+            state[k] = 0.0;
+        }
+        // the windows are centered and shrink going up, so the last one lies
+        // inside the others: each note runs alone up to it and after it, and
+        // all four together over it
+        int from = offset[n + 3];
+        int to = from + table[n + 3].length;
+        for (int k = 0; k < 3; k++) {
+            run(samples, n + k, offset[n + k], from, state, 2 * k);
+        }
+
+        double[] wa = table[n];
+        double[] wb = table[n + 1];
+        double[] wc = table[n + 2];
+        double[] wd = table[n + 3];
+        int oa = offset[n];
+        int ob = offset[n + 1];
+        int oc = offset[n + 2];
+        int od = offset[n + 3];
+        double ca = coeff[n];
+        double cb = coeff[n + 1];
+        double cc = coeff[n + 2];
+        double cd = coeff[n + 3];
+        double a1 = state[0];
+        double a2 = state[1];
+        double b1 = state[2];
+        double b2 = state[3];
+        double c1 = state[4];
+        double c2 = state[5];
+        double d1 = 0.0;
+        double d2 = 0.0;
+        for (int i = from; i < to; i++) {
+            double x = samples[i];
+            double a = x * wa[i - oa] + ca * a1 - a2;
+            double b = x * wb[i - ob] + cb * b1 - b2;
+            double c = x * wc[i - oc] + cc * c1 - c2;
+            double d = x * wd[i - od] + cd * d1 - d2;
+            a2 = a1;
+            a1 = a;
+            b2 = b1;
+            b1 = b;
+            c2 = c1;
+            c1 = c;
+            d2 = d1;
+            d1 = d;
+        }
+        state[0] = a1;
+        state[1] = a2;
+        state[2] = b1;
+        state[3] = b2;
+        state[4] = c1;
+        state[5] = c2;
+        state[6] = d1;
+        state[7] = d2;
+
+        for (int k = 0; k < 4; k++) {
+            run(samples, n + k, to, offset[n + k] + table[n + k].length, state, 2 * k);
+            p[n + k] = power(n + k, state, 2 * k);
+        }
+    }
+
+    /**
+     * Runs the resonator of the note at {@code n} over the samples
+     * {@code [from, to)} of the frame, from and into
+     * {@code state[k, k + 2)}.
+     */
+    private void run(double[] samples, int n, int from, int to, double[] state, int k) {
+        double[] w = table[n];
+        int o = offset[n];
+        double c = coeff[n];
+        double s1 = state[k];
+        double s2 = state[k + 1];
+        for (int i = from; i < to; i++) {
+            double s = samples[i] * w[i - o] + c * s1 - s2;
+            s2 = s1;
+            s1 = s;
+        }
+        state[k] = s1;
+        state[k + 1] = s2;
+    }
+
+    private double power(int n, double[] state, int k) {
+        double s1 = state[k];
+        double s2 = state[k + 1];
+        return (s1 * s1 + s2 * s2 - coeff[n] * s1 * s2) / den[n];
+    }
+
+}
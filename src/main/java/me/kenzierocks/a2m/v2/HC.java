@@ -25,22 +25,39 @@
 package me.kenzierocks.a2m.v2;
 
 import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 
 public class HC {
 
     public static void to_polar2(int len, DoubleBuffer freq, int conj, double scale, double[] amp2, double[] phs) {
+        to_polar2(len, freq, conj, scale, amp2, phs, 0, len / 2 + 1);
+    }
+
+    /**
+     * Converts only bins {@code from} to {@code to - 1}, reading them straight
+     * from {@code freq}. The other entries of {@code amp2} and {@code phs} are
+     * left as they were. Like the full conversion, this moves the position of
+     * {@code freq} past the {@code len} values of the frame.
+     */
+    public static void to_polar2(int len, DoubleBuffer freq, int conj, double scale, double[] amp2, double[] phs,
+            int from, int to) {
         int i;
         double rl, im;
 
-        double[] array = WindowHelper.getWindowingArray(len);
-        freq.get(array);
+        int base = freq.position();
+        int nyquist = len % 2 == 0 ? len / 2 : -1;
 
-        phs[0] = 0.0;
-        double f0 = array[0];
-        amp2[0] = f0 * f0 / scale;
-        for (i = 1; i < (len + 1) / 2; i++) {
-            rl = array[i];
-            im = array[len - i];
+        i = from;
+        if (i == 0 && i < to) {
+            phs[0] = 0.0;
+            double f0 = freq.get(base);
+            amp2[0] = f0 * f0 / scale;
+            i++;
+        }
+        int end = Math.min(to, (len + 1) / 2);
+        for (; i < end; i++) {
+            rl = freq.get(base + i);
+            im = freq.get(base + len - i);
             amp2[i] = (rl * rl + im * im) / scale;
             if (amp2[i] > 0.0) {
                 if (conj == 0)
@@ -51,11 +68,38 @@ public class HC {
                 phs[i] = 0.0;
             }
         }
-        if (len % 2 == 0) {
-            phs[len / 2] = 0.0;
-            double fl2 = array[len / 2];
-            amp2[len / 2] = fl2 * fl2 / scale;
+        if (nyquist >= from && nyquist < to) {
+            phs[nyquist] = 0.0;
+            double fl2 = freq.get(base + nyquist);
+            amp2[nyquist] = fl2 * fl2 / scale;
+        }
+        freq.position(base + len);
+    }
+
+    /**
+     * Like {@link #to_polar2(int, DoubleBuffer, int, double, double[], double[], int, int)},
+     * but for the interleaved complex bins of a single-precision real-to-complex
+     * transform, converting in double precision. This moves the position of
+     * {@code freq} past the {@code len / 2 + 1} bins of the frame.
+     */
+    public static void c_to_polar2(int len, FloatBuffer freq, double scale, double[] amp2, double[] phs, int from,
+            int to) {
+        int base = freq.position();
+        int end = Math.min(to, len / 2 + 1);
+        for (int i = from; i < end; i++) {
+            double rl = freq.get(base + 2 * i);
+            double im = freq.get(base + 2 * i + 1);
+            amp2[i] = (rl * rl + im * im) / scale;
+            if (i == 0 || 2 * i == len) {
+                // real, as in to_polar2
+                phs[i] = 0.0;
+            } else if (amp2[i] > 0.0) {
+                phs[i] = FastTrig.fast_atan2(im, rl);
+            } else {
+                phs[i] = 0.0;
+            }
         }
+        freq.position(base + FftPlans.complexLength(len));
     }
 
 }
@@ -0,0 +1,98 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events for {@link PipelineStats}. Only loaded once
+ * {@code jdk.jfr} is known to exist, so the rest of the pipeline runs on JVMs
+ * without it.
+ */
+final class JfrEvents {
+
+    /**
+     * One timed stage. There are several per frame, so these are off unless
+     * enabled in the recording settings.
+     */
+    @Name("me.kenzierocks.a2m.Stage")
+    @Label("Pipeline Stage")
+    @Category("AudioToMidi")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+
+    }
+
+    @Name("me.kenzierocks.a2m.Conversion")
+    @Label("Conversion")
+    @Category("AudioToMidi")
+    @StackTrace(false)
+    static final class ConversionEvent extends Event {
+
+        @Label("Audio Seconds")
+        double audioSeconds;
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wall;
+
+    }
+
+    static void stage(String stage, long time) {
+        StageEvent event = new StageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage;
+            event.time = time;
+            event.commit();
+        }
+    }
+
+    static void conversion(double audioSeconds, long wall) {
+        ConversionEvent event = new ConversionEvent();
+        if (event.isEnabled()) {
+            event.audioSeconds = audioSeconds;
+            event.wall = wall;
+            event.commit();
+        }
+    }
+
+    private JfrEvents() {
+    }
+
+}
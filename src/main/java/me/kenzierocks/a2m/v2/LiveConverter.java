@@ -0,0 +1,220 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.TaskResult;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
+/**
+ * Transcribes raw PCM as it arrives, sending note events as soon as they are
+ * known instead of writing a MIDI file at the end.
+ * 
+ * <p>
+ * Frames are transformed one per task, and the events of a frame are sent
+ * when it is analyzed, or up to {@link LiveNotes#hold(ProcessorConfig)}
+ * frames later for quiet notes that may still turn out too short. On top of
+ * that, a note can only be heard once enough of it is inside the window, so
+ * the time from a sound to its event is at most about one window plus the hold
+ * and the processing. The processing part is measured in
+ * {@link PipelineStats#latency()}.
+ * </p>
+ */
+public class LiveConverter {
+
+    /**
+     * Returns a receiver that writes each message to {@code out} as raw MIDI
+     * bytes and flushes it, ignoring timestamps.
+     */
+    public static Receiver streamReceiver(OutputStream out) {
+        return new Receiver() {
+
+            @Override
+            public void send(MidiMessage message, long timeStamp) {
+                try {
+                    out.write(message.getMessage(), 0, message.getLength());
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+
+        };
+    }
+
+    /**
+     * Sends events as MIDI messages, measuring how long after their frame
+     * arrived they went out.
+     */
+    private static final class MidiSink implements NoteSink {
+
+        private final Receiver out;
+        private final PipelineStats stats;
+        private final double secondsPerHop;
+        // when the frames that may still send events were read, by step
+        private final long[] arrived;
+        private boolean measuring = true;
+
+        MidiSink(Receiver out, PipelineStats stats, double secondsPerHop, int hold) {
+            this.out = out;
+            this.stats = stats;
+            this.secondsPerHop = secondsPerHop;
+            this.arrived = new long[hold + 1];
+        }
+
+        void arrived(int step, long time) {
+            arrived[step % arrived.length] = time;
+        }
+
+        /**
+         * The input has ended, so the events still to come were not waiting
+         * on audio.
+         */
+        void endOfInput() {
+            measuring = false;
+        }
+
+        @Override
+        public void accept(int step, boolean event, byte note, byte vel) {
+            ShortMessage message;
+            try {
+                message = new ShortMessage(event ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF, 0, note,
+                        event ? vel : 0);
+            } catch (InvalidMidiDataException e) {
+                throw new IllegalStateException(e);
+            }
+            out.send(message, (long) (step * secondsPerHop * 1e6));
+            if (measuring) {
+                stats.latency().record(System.nanoTime() - arrived[step % arrived.length]);
+            }
+        }
+
+    }
+
+    private final ProcessorConfig config;
+    private final float sampleRate;
+    private final int channels;
+
+    /**
+     * @param sampleRate
+     *            the sample rate of the PCM
+     * @param channels
+     *            1 or 2
+     */
+    public LiveConverter(ProcessorConfig config, float sampleRate, int channels) {
+        this.config = config;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    /**
+     * Reads signed 16-bit little-endian PCM from {@code in} until it ends,
+     * sending note events to {@code out} as they are found.
+     */
+    public void convert(InputStream in, Receiver out) throws Exception {
+        FftwWisdom.loadFor(config);
+
+        try (ProcessorContext context = new ProcessorContext(config.planner(), 0)) {
+            try {
+                convert(context, in, out);
+            } finally {
+                if (config.stats()) {
+                    context.stats().print(System.err);
+                }
+            }
+        }
+        FftwWisdom.saveFor(config);
+    }
+
+    /**
+     * Converts using the workers and plans of {@code context}. Messages are
+     * timestamped in microseconds of audio from the start of {@code in}.
+     */
+    public void convert(ProcessorContext context, InputStream in, Receiver out) throws Exception {
+        long start = System.nanoTime();
+        PipelineStats stats = context.stats();
+        // the same analysis as Processor
+        double cut_ratio = config.cutRatio();
+        double rel_cut_ratio = config.relCutRatio();
+        int len = 4096;
+        int notetop = 103; /* G8 */
+        int notelow = 28; /* E2 */
+        Extern.abs_flg = true;
+        int hop = len / 8;
+
+        SampleSource source = new PcmSampleSource(in, channels, false);
+        float sampleRate = this.sampleRate;
+        int factor = config.decimate() ? Decimator.factor(sampleRate, notetop, hop) : 1;
+        if (factor > 1) {
+            source = new Decimator(source, sampleRate, factor, notetop);
+            sampleRate /= factor;
+            len /= factor;
+            hop /= factor;
+        }
+
+        AnalysisEngine engine = config.engine().create(config, context, len, hop, sampleRate, cut_ratio,
+                rel_cut_ratio, notelow, notetop);
+        double secondsPerHop = hop / sampleRate;
+        System.err.printf("Live: %.1f ms window, %.1f ms hop, quiet notes held up to %d hops%n",
+                1000 * engine.len() / sampleRate, 1000 * secondsPerHop, LiveNotes.hold(config));
+
+        MidiSink sink = new MidiSink(out, stats, secondsPerHop, LiveNotes.hold(config));
+        LiveNotes live = new LiveNotes(sink, config);
+
+        ParallelWindower windower = new ParallelWindower(source, engine.len(), hop, 1, engine.padding());
+        int icnt = 0;
+        try {
+            Iterator<TaskResult> frames = windower.process(context, engine);
+            for (; frames.hasNext(); icnt++) {
+                TaskResult res = frames.next();
+                sink.arrived(icnt, res.arrived());
+                long time = System.nanoTime();
+                live.check(icnt, res.vel().array);
+                windower.recycle(res);
+                stats.record(Stage.CHECK, time);
+            }
+        } finally {
+            windower.finish();
+        }
+        sink.endOfInput();
+        live.end();
+        stats.conversion(icnt * secondsPerHop, start);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.Arrays;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Turns note velocities into events as the frames arrive: {@link Notes#check}
+ * followed by the short-note removal of {@link Processor}, without waiting for
+ * notes to end.
+ * 
+ * <p>
+ * An on event is sent once no short-note rule can remove it any more, which
+ * is straight away for loud notes and at most {@link #hold(ProcessorConfig)} steps later for
+ * quiet ones. It carries the strongest velocity seen until then, so later
+ * rises are lost. Octaves are not removed, as that needs whole notes.
+ * </p>
+ */
+final class LiveNotes {
+
+    // check() as Processor calls it
+    private static final int OFF_THRESHOLD = 0;
+
+    private final int on_threshold;
+    private final int peak_threshold;
+    // remove_shortnotes(r + 1, min_vel[r]) for each r
+    private final int[] min_vel;
+    private final NoteSink next;
+    private final int[] on_step = new int[128];
+    private final byte[] on_vel = new byte[128];
+    private final boolean[] sent = new boolean[128];
+    private int last_step = -1;
+
+    /**
+     * Uses the thresholds and short-note velocities of {@code config}.
+     */
+    LiveNotes(NoteSink next, ProcessorConfig config) {
+        this.next = next;
+        this.on_threshold = config.onThreshold();
+        this.peak_threshold = config.peakThreshold();
+        this.min_vel = Ints.toArray(config.shortNoteVelocities());
+        Arrays.fill(on_step, -1);
+    }
+
+    /**
+     * The most steps an on event is held back with {@code config}.
+     */
+    static int hold(ProcessorConfig config) {
+        return config.shortNoteVelocities().size();
+    }
+
+    void check(int step, byte[] vel) {
+        last_step = step;
+        for (int i = 0; i < 128; i++) {
+            if (on_step[i] < 0) {
+                if (vel[i] > on_threshold) {
+                    on(step, i, vel[i]);
+                }
+            } else if (vel[i] <= OFF_THRESHOLD) {
+                off(step, i);
+            } else if (vel[i] >= on_vel[i] + peak_threshold) {
+                off(step, i);
+                on(step, i, vel[i]);
+            } else if (vel[i] > on_vel[i]) {
+                on_vel[i] = vel[i];
+            }
+        }
+        for (int i = 0; i < 128; i++) {
+            // still on after this step, so at least this long
+            if (on_step[i] >= 0 && !sent[i] && !removable(step + 1 - on_step[i], on_vel[i])) {
+                send(i);
+            }
+        }
+    }
+
+    /**
+     * Ends the notes still on one step after the last frame. Unlike
+     * {@link Notes#regulate()}, which ends them one step after the last event,
+     * this can not shorten a note that was already sent.
+     */
+    void end() {
+        int step = last_step + 1;
+        for (int i = 0; i < 128; i++) {
+            if (on_step[i] >= 0) {
+                off(step, i);
+            }
+        }
+        next.end();
+    }
+
+    private boolean removable(int duration, byte vel) {
+        for (int r = 0; r < min_vel.length; r++) {
+            if (duration <= r + 1 && vel <= min_vel[r]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void on(int step, int note, byte vel) {
+        on_step[note] = step;
+        on_vel[note] = vel;
+        sent[note] = false;
+    }
+
+    private void off(int step, int note) {
+        if (sent[note]) {
+            next.accept(step, false, (byte) note, (byte) 64);
+        } else if (!removable(step - on_step[note], on_vel[note])) {
+            send(note);
+            next.accept(step, false, (byte) note, (byte) 64);
+        }
+        on_step[note] = -1;
+        sent[note] = false;
+    }
+
+    private void send(int note) {
+        sent[note] = true;
+        next.accept(on_step[note], true, (byte) note, on_vel[note]);
+    }
+
+}
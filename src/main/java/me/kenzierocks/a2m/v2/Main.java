@@ -24,7 +24,7 @@
  */
 package me.kenzierocks.a2m.v2;
 
-import java.io.IOException;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
@@ -37,6 +37,7 @@ import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
+import joptsimple.util.EnumConverter;
 import joptsimple.util.PathConverter;
 import joptsimple.util.PathProperties;
 
@@ -56,6 +57,117 @@ public class Main {
             .withValuesConvertedBy(new PathConverter())
             .defaultsTo(Paths.get("output.mid"));
 
+    private static final OptionSpec<Void> STREAM = PARSER.accepts("stream", "Analyze audio as it is decoded, using constant memory.");
+
+    private static final OptionSpec<Void> NO_MMAP = PARSER.accepts("no-mmap", "Decode WAV files through javax.sound instead of mapping them.");
+
+    private static final ArgumentAcceptingOptionSpec<Integer> FRAMES_PER_TASK = PARSER.accepts("frames-per-task",
+            "Frames transformed per FFT task, 0 to pick automatically.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(0);
+
+    private static final ArgumentAcceptingOptionSpec<StandardWindows> WINDOW = PARSER.accepts("window", "Analysis window.")
+            .withRequiredArg()
+            .withValuesConvertedBy(new EnumConverter<StandardWindows>(StandardWindows.class) {
+            })
+            .defaultsTo(StandardWindows.HANNING);
+
+    private static final ArgumentAcceptingOptionSpec<PlannerRigor> PLANNER = PARSER.accepts("planner", "FFTW planning rigor.")
+            .withRequiredArg()
+            .withValuesConvertedBy(new EnumConverter<PlannerRigor>(PlannerRigor.class) {
+            })
+            .defaultsTo(PlannerRigor.ESTIMATE);
+
+    private static final ArgumentAcceptingOptionSpec<PeakSearch> PEAKS = PARSER.accepts("peaks", "How peaks are picked from each frame.")
+            .withRequiredArg()
+            .withValuesConvertedBy(new EnumConverter<PeakSearch>(PeakSearch.class) {
+            })
+            .defaultsTo(PeakSearch.HEAP);
+
+    private static final ArgumentAcceptingOptionSpec<Engine> ENGINE = PARSER.accepts("engine", "How frames are turned into notes.")
+            .withRequiredArg()
+            .withValuesConvertedBy(new EnumConverter<Engine>(Engine.class) {
+            })
+            .defaultsTo(Engine.FFT);
+
+    private static final OptionSpec<Void> DECIMATE = PARSER.accepts("decimate",
+            "Low-pass and decimate to the lowest rate covering the top note, analyzing with shorter frames.");
+
+    private static final OptionSpec<Void> FLOAT = PARSER.accepts("float",
+            "Keep audio and FFTs in single precision, halving their memory. Their wisdom goes in <wisdom>.f32.");
+
+    private static final ArgumentAcceptingOptionSpec<Double> CUT_RATIO = PARSER.accepts("cut-ratio",
+            "log10 of the power below which nothing is picked.")
+            .withRequiredArg()
+            .ofType(Double.class)
+            .defaultsTo(-5.0);
+
+    private static final ArgumentAcceptingOptionSpec<Double> REL_CUT_RATIO = PARSER.accepts("rel-cut-ratio",
+            "log10 of the cutoff relative to the average power, when not using the absolute cutoff.")
+            .withRequiredArg()
+            .ofType(Double.class)
+            .defaultsTo(1.0);
+
+    private static final ArgumentAcceptingOptionSpec<Integer> ON_THRESHOLD = PARSER.accepts("on-threshold",
+            "Velocity a note must exceed to switch on.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(8);
+
+    private static final ArgumentAcceptingOptionSpec<Integer> PEAK_THRESHOLD = PARSER.accepts("peak-threshold",
+            "Velocity rise that strikes a sounding note again, 128 for never.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(128);
+
+    private static final ArgumentAcceptingOptionSpec<Integer> SHORT_NOTES = PARSER.accepts("short-notes",
+            "Comma-separated velocities notes of 1, 2, ... steps must exceed to be kept.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .withValuesSeparatedBy(',')
+            .defaultsTo(64, 28);
+
+    private static final ArgumentAcceptingOptionSpec<Path> SPECTRA = PARSER.accepts("spectra",
+            "Cache the corrected spectra of the input in this file, and pick notes from them again"
+                    + " when it holds them, skipping decoding and FFTs.")
+            .withRequiredArg()
+            .withValuesConvertedBy(new PathConverter());
+
+    private static final ArgumentAcceptingOptionSpec<Path> WISDOM = PARSER.accepts("wisdom", "FFTW wisdom file to load and update.")
+            .withRequiredArg()
+            .withValuesConvertedBy(new PathConverter());
+
+    private static final OptionSpec<Void> BATCH = PARSER.accepts("batch",
+            "Convert every file of the input directory, or listed in the input file, into the output directory.");
+
+    private static final ArgumentAcceptingOptionSpec<Integer> JOBS = PARSER.accepts("jobs", "Files converted at once in batch mode.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(Runtime.getRuntime().availableProcessors());
+
+    private static final ArgumentAcceptingOptionSpec<Integer> FRAME_BUDGET = PARSER.accepts("frame-budget",
+            "Frames in flight across all files in batch mode, 0 for no shared limit.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(Runtime.getRuntime().availableProcessors() * 128);
+
+    private static final OptionSpec<Void> LIVE = PARSER.accepts("live",
+            "Read raw signed 16-bit little-endian PCM and write MIDI messages as notes are found, to stdout unless -o is given.");
+
+    private static final ArgumentAcceptingOptionSpec<Integer> RATE = PARSER.accepts("rate", "Sample rate of the PCM in live mode.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(44100);
+
+    private static final ArgumentAcceptingOptionSpec<Integer> CHANNELS = PARSER.accepts("channels", "Channels of the PCM in live mode, 1 or 2.")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(2);
+
+    private static final OptionSpec<Void> STATS = PARSER.accepts("stats",
+            "Print throughput and where the time went after converting.");
+
     private static final OptionSpec<Void> HELP = PARSER.acceptsAll(Arrays.asList("h", "help"), "Print this help.")
             .forHelp();
 
@@ -65,6 +177,22 @@ public class Main {
             opts = PARSER.parse(args);
             opts.valueOf(INPUT);
             opts.valueOf(OUTPUT);
+            opts.valueOf(FRAMES_PER_TASK);
+            opts.valueOf(WINDOW);
+            opts.valueOf(PLANNER);
+            opts.valueOf(WISDOM);
+            opts.valueOf(PEAKS);
+            opts.valueOf(ENGINE);
+            opts.valueOf(JOBS);
+            opts.valueOf(FRAME_BUDGET);
+            opts.valueOf(RATE);
+            opts.valueOf(CHANNELS);
+            opts.valueOf(CUT_RATIO);
+            opts.valueOf(REL_CUT_RATIO);
+            opts.valueOf(ON_THRESHOLD);
+            opts.valueOf(PEAK_THRESHOLD);
+            opts.valuesOf(SHORT_NOTES);
+            opts.valueOf(SPECTRA);
         } catch (OptionException e) {
             System.err.println(e.getLocalizedMessage());
             System.exit(1);
@@ -76,17 +204,67 @@ public class Main {
             return;
         }
 
+        ProcessorConfig config = ProcessorConfig.builder()
+                .streaming(opts.has(STREAM))
+                .mapWav(!opts.has(NO_MMAP))
+                .framesPerTask(opts.valueOf(FRAMES_PER_TASK))
+                .window(opts.valueOf(WINDOW))
+                .planner(opts.valueOf(PLANNER))
+                .wisdomFile(opts.valueOf(WISDOM))
+                .peakSearch(opts.valueOf(PEAKS))
+                .engine(opts.valueOf(ENGINE))
+                .decimate(opts.has(DECIMATE))
+                .singlePrecision(opts.has(FLOAT))
+                .cutRatio(opts.valueOf(CUT_RATIO))
+                .relCutRatio(opts.valueOf(REL_CUT_RATIO))
+                .onThreshold(opts.valueOf(ON_THRESHOLD))
+                .peakThreshold(opts.valueOf(PEAK_THRESHOLD))
+                .shortNoteVelocities(opts.valuesOf(SHORT_NOTES))
+                .spectralCache(opts.valueOf(SPECTRA))
+                .stats(opts.has(STATS))
+                .build();
+
         Path input = opts.valueOf(INPUT);
-        try (InputStream stream = getStream(input);
-                OutputStream out = Files.newOutputStream(opts.valueOf(OUTPUT))) {
-            new Processor(stream, out).process();
+        if (opts.has(SPECTRA) && (input == STDIN || opts.has(LIVE) || opts.has(BATCH))) {
+            System.err.println("--spectra needs a single input file");
+            System.exit(1);
+            return;
         }
-    }
-
-    private static InputStream getStream(Path path) throws IOException {
-        if (path == STDIN) {
-            return System.in;
+        if (opts.has(LIVE)) {
+            int channels = opts.valueOf(CHANNELS);
+            if (channels != 1 && channels != 2) {
+                System.err.println("--channels must be 1 or 2");
+                System.exit(1);
+                return;
+            }
+            LiveConverter live = new LiveConverter(config, opts.valueOf(RATE), channels);
+            // a FileInputStream, as channel streams can't tell what a pipe has available
+            try (InputStream in = input == STDIN ? System.in : new FileInputStream(input.toFile());
+                    OutputStream out = opts.has(OUTPUT) ? Files.newOutputStream(opts.valueOf(OUTPUT)) : System.out) {
+                live.convert(in, LiveConverter.streamReceiver(out));
+            }
+            return;
+        }
+        if (opts.has(BATCH)) {
+            if (input == STDIN || !opts.has(OUTPUT)) {
+                System.err.println("--batch needs an input and an output directory");
+                System.exit(1);
+                return;
+            }
+            BatchConverter batch = new BatchConverter(config, opts.valueOf(JOBS), opts.valueOf(FRAME_BUDGET));
+            int failed = batch.convert(BatchConverter.listInputs(input), opts.valueOf(OUTPUT));
+            if (failed > 0) {
+                System.err.println(failed + " file(s) failed");
+                System.exit(1);
+            }
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(opts.valueOf(OUTPUT))) {
+            if (input == STDIN) {
+                new Processor(System.in, out, config).process();
+            } else {
+                new Processor(input, out, config).process();
+            }
         }
-        return Files.newInputStream(path);
     }
 }
@@ -24,51 +24,128 @@
  */
 package me.kenzierocks.a2m.v2;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
-import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MetaMessage;
-import javax.sound.midi.MidiEvent;
-import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.ShortMessage;
-import javax.sound.midi.Track;
-
-import me.kenzierocks.a2m.v2.Notes.Note;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 
+/**
+ * Writes {@link Notes} as a type 1 Standard MIDI File, straight from the
+ * event arrays. The bytes are the same as {@code MidiSystem.write} would give
+ * for a single track of the events: running status, and an end of track at
+ * the last event.
+ */
 public class Midi {
 
+    private static final int NOTE_OFF = 0x80;
+    private static final int NOTE_ON = 0x90;
+    private static final int META = 0xFF;
     private static final int SET_TEMPO = 0x51;
+    private static final int END_OF_TRACK = 0x2F;
     private static final byte[] TEMPO = {
             0x07, (byte) 0xA1, 0x20
     };
 
-    public static void output_midi(Notes notes, long div, OutputStream out) throws InvalidMidiDataException, IOException {
-        Sequence seq = new Sequence(Sequence.PPQ, (int) div, 1);
-        Track track = seq.getTracks()[0];
-        track.add(new MidiEvent(new MetaMessage(SET_TEMPO, TEMPO, 3), 0));
+    public static void output_midi(Notes notes, long div, OutputStream out) throws IOException {
+        int[] order = order(notes);
+
+        // the track length comes first, so measure it with a dry run
+        CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+        write_track(notes, order, new DataOutputStream(counter));
+        long length = counter.getCount();
+        checkArgument(length <= 0xFFFFFFFFL, "track too long: %s bytes", length);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeBytes("MThd");
+        data.writeInt(6);
+        data.writeShort(1); // type 1
+        data.writeShort(1); // tracks
+        data.writeShort((int) div);
+
+        data.writeBytes("MTrk");
+        data.writeInt((int) length);
+        write_track(notes, order, data);
+        // not closed, the stream belongs to the caller
+        data.flush();
+    }
+
+    private static void write_track(Notes notes, int[] order, DataOutputStream data) throws IOException {
+        write_var(data, 0);
+        data.writeByte(META);
+        data.writeByte(SET_TEMPO);
+        write_var(data, TEMPO.length);
+        data.write(TEMPO);
 
-        for (int i = 0; i < notes.count(); i++) {
-            Note n = notes.getNote(i);
+        int running = -1;
+        int last_step = 0;
+        for (int k = 0; k < notes.count(); k++) {
+            int i = order == null ? k : order[k];
+            int step = notes.step(i);
+            int note = notes.note(i);
+            int vel = notes.event(i) ? notes.vel(i) : 0;
+            checkArgument(note >= 0 && vel >= 0, "invalid event %s: note %s, vel %s", i, note, vel);
+            int status = notes.event(i) ? NOTE_ON : NOTE_OFF;
 
-            if (n.event) {
-                track.add(new MidiEvent(noteOn(n.note, n.vel), n.step));
-            } else {
-                track.add(new MidiEvent(noteOff(n.note), n.step));
+            write_var(data, step - last_step);
+            if (status != running) {
+                data.writeByte(status);
+                running = status;
             }
+            data.writeByte(note);
+            data.writeByte(vel);
+            last_step = step;
         }
 
-        MidiSystem.write(seq, 1, out);
+        write_var(data, 0);
+        data.writeByte(META);
+        data.writeByte(END_OF_TRACK);
+        write_var(data, 0);
     }
 
-    private static MidiMessage noteOn(int note, int vel) throws InvalidMidiDataException {
-        return new ShortMessage(ShortMessage.NOTE_ON, 0, note, vel);
+    private static void write_var(DataOutputStream data, int value) throws IOException {
+        // 7 bits per byte, most significant first, high bit on all but the last
+        int shift = 28;
+        while (shift > 0 && (value >>> shift) == 0) {
+            shift -= 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            data.writeByte(0x80 | ((value >>> shift) & 0x7F));
+        }
+        data.writeByte(value & 0x7F);
     }
 
-    private static MidiMessage noteOff(int note) throws InvalidMidiDataException {
-        return new ShortMessage(ShortMessage.NOTE_OFF, 0, note, 0);
+    /**
+     * Returns the event indexes sorted by step, keeping the order of events on
+     * the same step, or {@code null} if they already are.
+     */
+    private static int[] order(Notes notes) {
+        int count = notes.count();
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            checkArgument(notes.step(i) >= 0, "negative step at event %s", i);
+            if (i > 0 && notes.step(i) < notes.step(i - 1)) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            return null;
+        }
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) notes.step(i) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
     }
 
 }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+/**
+ * An engine measuring each note from {@code notelow} to {@code notetop}
+ * directly, instead of searching a full spectrum for peaks. Only the notes are
+ * computed, so there is no bin-to-note mapping.
+ * 
+ * <p>
+ * Each note gets a window long enough to tell it from its neighbours, a
+ * semitone apart, capped at the frame length and centered in the frame. High
+ * notes get shorter windows, and so react faster. Powers are scaled like the
+ * FFT spectrum, so {@code cut_ratio} means the same, and a note sounds where
+ * its power is above the threshold and no less than both neighbours'.
+ * </p>
+ */
+abstract class NoteBankEngine implements AnalysisEngine {
+
+    // periods of a note in a window that resolves semitones
+    static final double Q = 1.0 / (Math.pow(2.0, 1.0 / 12.0) - 1.0);
+
+    /**
+     * The window, in samples, that resolves {@code note} from its neighbours.
+     */
+    static int size(int note, float sampleRate) {
+        return (int) Math.ceil(Q * sampleRate / MidiFreqRelations.mid2freq[note]);
+    }
+
+    final int len;
+    final double cut_ratio;
+    final double rel_cut_ratio;
+    final int notelow;
+    final int notetop;
+    final int notes;
+    final PipelineStats stats;
+    // per note, from notelow
+    final double[] omega;
+    final int[] offset;
+    final double[][] table;
+    final double[] den;
+
+    NoteBankEngine(Window window, int len, float sampleRate, double cut_ratio, double rel_cut_ratio,
+            int notelow, int notetop, PipelineStats stats) {
+        this.len = len;
+        this.cut_ratio = cut_ratio;
+        this.rel_cut_ratio = rel_cut_ratio;
+        this.notelow = notelow;
+        this.notetop = notetop;
+        this.notes = notetop - notelow + 1;
+        this.stats = stats;
+        this.omega = new double[notes];
+        this.offset = new int[notes];
+        this.table = new double[notes][];
+        this.den = new double[notes];
+        for (int n = 0; n < notes; n++) {
+            int size = Math.min(len, size(notelow + n, sampleRate));
+            omega[n] = 2.0 * Math.PI * MidiFreqRelations.mid2freq[notelow + n] / sampleRate;
+            offset[n] = (len - size) / 2;
+            table[n] = window.coefficients(size);
+            den[n] = window.init_den(size);
+        }
+    }
+
+    @Override
+    public int len() {
+        return len;
+    }
+
+    /**
+     * The number of samples the window of {@code note} covers.
+     */
+    int size(int note) {
+        return table[note - notelow].length;
+    }
+
+    /**
+     * Scales the notes of {@code p}, from index 0 for {@code notelow}, that
+     * stand above their neighbours into {@code intens}, the same way
+     * {@link Analyze#note_intensity} scales peaks.
+     */
+    void intensity(double[] p, byte[] intens) {
+        for (int i = 0; i < 128; i++) {
+            intens[i] = 0;
+        }
+
+        double threshold;
+        if (!Extern.abs_flg) {
+            double av = 0.0;
+            for (int n = 0; n < notes; n++) {
+                av += p[n];
+            }
+            av /= (double) notes;
+            threshold = av * Math.pow(10.0, rel_cut_ratio);
+        } else {
+            threshold = Math.pow(10.0, cut_ratio);
+        }
+
+        for (int n = 0; n < notes; n++) {
+            if (p[n] <= threshold
+                    || (n > 0 && p[n - 1] > p[n])
+                    || (n < notes - 1 && p[n + 1] > p[n])) {
+                continue;
+            }
+            double x = 127.0 / (-cut_ratio)
+                    * (Math.log10(p[n]) - cut_ratio);
+            if (x >= 128.0) {
+                intens[notelow + n] = 127;
+            } else if (x > 0) {
+                intens[notelow + n] = (byte) x;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,348 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The {@link NoteStage} implementations.
+ */
+final class NoteFilters {
+
+    private NoteFilters() {
+    }
+
+    static final class Regulate implements NoteSink {
+
+        private final NoteSink next;
+        private final boolean[] on = new boolean[128];
+        private boolean any;
+        private int last_step;
+
+        Regulate(NoteSink next) {
+            this.next = next;
+        }
+
+        @Override
+        public void accept(int step, boolean event, byte note, byte vel) {
+            if (!event) {
+                // orphan off events are dropped
+                if (on[note]) {
+                    emit(step, false, note, vel);
+                }
+                on[note] = false;
+            } else {
+                if (on[note]) {
+                    emit(step, false, note, (byte) 64);
+                }
+                on[note] = true;
+                emit(step, true, note, vel);
+            }
+        }
+
+        private void emit(int step, boolean event, byte note, byte vel) {
+            any = true;
+            last_step = step;
+            next.accept(step, event, note, vel);
+        }
+
+        @Override
+        public void end() {
+            if (any) {
+                int step = last_step + 1;
+                for (int i = 0; i < 128; i++) {
+                    if (on[i]) {
+                        next.accept(step, false, (byte) i, (byte) 64);
+                    }
+                }
+            }
+            next.end();
+        }
+
+    }
+
+    /**
+     * Removes on/off pairs when the off arrives. Events are held back from
+     * the first on that may still be removed.
+     */
+    abstract static class PairFilter implements NoteSink {
+
+        private final NoteSink next;
+        private final EventQueue queue = new EventQueue();
+        final int[] on_step = new int[128];
+        final byte[] on_vel = new byte[128];
+        // queue index of the note's on event
+        private final int[] on_index = new int[128];
+        // events written and not removed
+        int live;
+
+        PairFilter(NoteSink next) {
+            this.next = next;
+            Arrays.fill(on_step, -1);
+            Arrays.fill(on_index, -1);
+        }
+
+        /**
+         * Whether the pair of {@code note}, ending at {@code step}, is removed.
+         */
+        abstract boolean remove(int step, byte note);
+
+        /**
+         * Whether the on event of {@code note} may still be removed.
+         */
+        abstract boolean removable(byte note);
+
+        /**
+         * Called after an on event is written.
+         */
+        void on(byte note, byte vel) {
+        }
+
+        @Override
+        public void accept(int step, boolean event, byte note, byte vel) {
+            if (!event) {
+                // off event
+                if (on_step[note] < 0 || on_index[note] < 0) {
+                    // no on event on the note
+                    // so remove this orphant off event
+                } else if (remove(step, note)) {
+                    // remove these on and off events on the note
+                    queue.kill(on_index[note]);
+                    live--;
+                } else {
+                    write(step, false, note, vel);
+                }
+
+                // reset on_step[] and on_index[]
+                on_step[note] = -1;
+                on_index[note] = -1;
+            } else {
+                // on event
+                if (on_step[note] >= 0 && on_index[note] >= 0) {
+                    // the note is already on
+                    // so, insert off event here
+                    write(step, false, note, (byte) 64);
+                }
+
+                on_step[note] = step;
+                on_vel[note] = vel;
+                on_index[note] = write(step, true, note, vel);
+                on(note, vel);
+            }
+            flush(false);
+        }
+
+        private int write(int step, boolean event, byte note, byte vel) {
+            live++;
+            return queue.add(step, event, note, vel);
+        }
+
+        private void flush(boolean all) {
+            while (!queue.isEmpty()) {
+                int index = queue.head();
+                byte note = queue.note(index);
+                if (note == EventQueue.DEAD) {
+                    queue.poll();
+                    continue;
+                }
+                if (!all && queue.event(index) && on_index[note] == index && removable(note)) {
+                    break;
+                }
+                next.accept(queue.step(index), queue.event(index), note, queue.vel(index));
+                queue.poll();
+            }
+        }
+
+        @Override
+        public void end() {
+            flush(true);
+            next.end();
+        }
+
+    }
+
+    static final class ShortNotes extends PairFilter {
+
+        private final int min_duration;
+        private final int min_vel;
+
+        ShortNotes(NoteSink next, int min_duration, int min_vel) {
+            super(next);
+            this.min_duration = min_duration;
+            this.min_vel = min_vel;
+        }
+
+        @Override
+        boolean remove(int step, byte note) {
+            int duration = step - on_step[note];
+            return duration <= min_duration && on_vel[note] <= min_vel;
+        }
+
+        @Override
+        boolean removable(byte note) {
+            return on_vel[note] <= min_vel;
+        }
+
+    }
+
+    static final class LongNotes extends PairFilter {
+
+        private final int max_duration;
+        private final int min_vel;
+
+        LongNotes(NoteSink next, int max_duration, int min_vel) {
+            super(next);
+            this.max_duration = max_duration;
+            this.min_vel = min_vel;
+        }
+
+        @Override
+        boolean remove(int step, byte note) {
+            int duration = step - on_step[note];
+            return duration >= max_duration && on_vel[note] <= min_vel;
+        }
+
+        @Override
+        boolean removable(byte note) {
+            return on_vel[note] <= min_vel;
+        }
+
+    }
+
+    static final class Octaves extends PairFilter {
+
+        private final BitSet flag_remove = new BitSet(128);
+
+        Octaves(NoteSink next) {
+            super(next);
+        }
+
+        @Override
+        boolean remove(int step, byte note) {
+            // NOTE: looked up by the event's position in the list, not by its
+            // note, as Notes.remove_octaves has always done
+            return flag_remove.get(live);
+        }
+
+        @Override
+        boolean removable(byte note) {
+            return true;
+        }
+
+        @Override
+        void on(byte note, byte vel) {
+            flag_remove.clear(note);
+            int note_down = note - 12;
+            if (note_down < 0) {
+                return;
+            }
+            if (on_step[note_down] >= 0 && vel < on_vel[note_down]) {
+                flag_remove.set(note);
+            }
+        }
+
+    }
+
+    /**
+     * FIFO of events, addressed by the running count of events added.
+     */
+    static final class EventQueue {
+
+        static final byte DEAD = -1;
+
+        private int[] steps = new int[64];
+        private boolean[] events = new boolean[64];
+        private byte[] notes = new byte[64];
+        private byte[] vels = new byte[64];
+        // index of the first array slot
+        private int base;
+        private int head;
+        private int tail;
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        int head() {
+            return head;
+        }
+
+        int add(int step, boolean event, byte note, byte vel) {
+            if (tail - base == steps.length) {
+                makeRoom();
+            }
+            int slot = tail - base;
+            steps[slot] = step;
+            events[slot] = event;
+            notes[slot] = note;
+            vels[slot] = vel;
+            return tail++;
+        }
+
+        private void makeRoom() {
+            int used = tail - head;
+            int from = head - base;
+            if (used > steps.length / 2) {
+                int newLength = steps.length * 2;
+                steps = Arrays.copyOf(steps, newLength);
+                events = Arrays.copyOf(events, newLength);
+                notes = Arrays.copyOf(notes, newLength);
+                vels = Arrays.copyOf(vels, newLength);
+            }
+            System.arraycopy(steps, from, steps, 0, used);
+            System.arraycopy(events, from, events, 0, used);
+            System.arraycopy(notes, from, notes, 0, used);
+            System.arraycopy(vels, from, vels, 0, used);
+            base = head;
+        }
+
+        void poll() {
+            head++;
+        }
+
+        void kill(int index) {
+            notes[index - base] = DEAD;
+        }
+
+        int step(int index) {
+            return steps[index - base];
+        }
+
+        boolean event(int index) {
+            return events[index - base];
+        }
+
+        byte note(int index) {
+            return notes[index - base];
+        }
+
+        byte vel(int index) {
+            return vels[index - base];
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+/**
+ * One rule of the note post-processing, applied to events as they stream
+ * through. Stages hold back only the events a later event could still remove,
+ * so a chain of them gives the same result as running each rule over the
+ * whole list in turn.
+ */
+public interface NoteStage {
+
+    /**
+     * Returns a sink that applies this stage and passes the result to
+     * {@code next}.
+     */
+    NoteSink into(NoteSink next);
+
+    static NoteStage chain(NoteStage... stages) {
+        return next -> {
+            NoteSink sink = next;
+            for (int i = stages.length - 1; i >= 0; i--) {
+                sink = stages[i].into(sink);
+            }
+            return sink;
+        };
+    }
+
+    /**
+     * Drops orphan off events, closes notes switched on twice, and closes the
+     * notes left on one step after the last event.
+     */
+    static NoteStage regulate() {
+        return NoteFilters.Regulate::new;
+    }
+
+    /**
+     * Removes notes no longer than {@code min_duration} steps and no louder
+     * than {@code min_vel}.
+     */
+    static NoteStage remove_shortnotes(int min_duration, int min_vel) {
+        return next -> new NoteFilters.ShortNotes(next, min_duration, min_vel);
+    }
+
+    /**
+     * Removes notes at least {@code max_duration} steps long and no louder
+     * than {@code min_vel}.
+     */
+    static NoteStage remove_longnotes(int max_duration, int min_vel) {
+        return next -> new NoteFilters.LongNotes(next, max_duration, min_vel);
+    }
+
+    /**
+     * Removes notes that start quieter than the note sounding an octave below,
+     * keeping the flag lookup of {@link Notes#remove_octaves()} as it is.
+     */
+    static NoteStage remove_octaves() {
+        return NoteFilters.Octaves::new;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+/**
+ * Maps frequencies to MIDI notes by comparison instead of a logarithm, with
+ * exactly the result of {@link MidiFreqRelations#get_note}. A table is built
+ * for one sample rate and frame length, so that a frequency's FFT bin gives
+ * the note to start comparing from.
+ */
+public final class NoteTable {
+
+    private static final int NOTES = 128;
+
+    /**
+     * {@code BOUNDS[n]} is the lowest frequency {@code get_note} maps to
+     * {@code n} or above.
+     */
+    private static final double[] BOUNDS = new double[NOTES + 1];
+    static {
+        for (int n = 0; n <= NOTES; n++) {
+            BOUNDS[n] = lowestFrequency(n);
+        }
+    }
+
+    /**
+     * Bisects the bits of positive doubles, whose order matches their values.
+     * {@code get_note} never decreases with frequency, so the result is exact.
+     */
+    private static double lowestFrequency(int note) {
+        // get_note(MIN_VALUE) is far below note 0, get_note(infinity) above 127
+        long lo = Double.doubleToLongBits(Double.MIN_VALUE);
+        long hi = Double.doubleToLongBits(Double.POSITIVE_INFINITY);
+        while (hi - lo > 1) {
+            long mid = (lo + hi) >>> 1;
+            if (MidiFreqRelations.get_note(Double.longBitsToDouble(mid)) >= note) {
+                hi = mid;
+            } else {
+                lo = mid;
+            }
+        }
+        return Double.longBitsToDouble(hi);
+    }
+
+    private final double t0;
+    // the note at the lower edge of each bin
+    private final byte[] first;
+
+    public NoteTable(float sampleRate, int len) {
+        this.t0 = ((double) len) / sampleRate;
+        this.first = new byte[len / 2 + 2];
+        for (int b = 0; b < first.length; b++) {
+            int n = MidiFreqRelations.get_note(b / t0);
+            first[b] = (byte) Math.max(0, Math.min(NOTES - 1, n));
+        }
+    }
+
+    /**
+     * Same as {@link MidiFreqRelations#get_note}.
+     */
+    public int note(double freq) {
+        if (!(freq >= BOUNDS[0] && freq < BOUNDS[NOTES])) {
+            // including zero, negative and NaN
+            return MidiFreqRelations.get_note(freq);
+        }
+        int b = (int) (freq * t0);
+        int n = b < first.length ? first[b] : NOTES - 1;
+        // the bin is only a hint, rounding may put it one off
+        while (freq < BOUNDS[n]) {
+            n--;
+        }
+        while (freq >= BOUNDS[n + 1]) {
+            n++;
+        }
+        return n;
+    }
+
+}
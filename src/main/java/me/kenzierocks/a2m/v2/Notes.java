@@ -24,15 +24,20 @@
  */
 package me.kenzierocks.a2m.v2;
 
-import java.util.ArrayList;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
 import java.util.Arrays;
-import java.util.BitSet;
-import java.util.List;
 
 /**
  * struct WAON_notes
+ * 
+ * <p>
+ * Events are kept in parallel arrays. The filters run the events through the
+ * matching {@link NoteStage} into fresh arrays.
+ * </p>
  */
-public class Notes {
+public class Notes implements NoteSink {
 
     public static final class Note {
 
@@ -50,254 +55,148 @@ public class Notes {
 
     }
 
-    private final List<Note> notes = new ArrayList<>();
+    private int[] steps = new int[64];
+    private boolean[] events = new boolean[64];
+    private byte[] notes = new byte[64];
+    private byte[] vels = new byte[64];
+    private int size;
 
     public int count() {
-        return notes.size();
+        return size;
     }
 
+    /**
+     * Returns a copy of the event at {@code index}. Changing it does not
+     * change the event.
+     */
     public Note getNote(int index) {
-        return notes.get(index);
+        checkElementIndex(index, size);
+        return new Note(steps[index], events[index], notes[index], vels[index]);
+    }
+
+    public int step(int index) {
+        checkElementIndex(index, size);
+        return steps[index];
+    }
+
+    public boolean event(int index) {
+        checkElementIndex(index, size);
+        return events[index];
+    }
+
+    public byte note(int index) {
+        checkElementIndex(index, size);
+        return notes[index];
+    }
+
+    public byte vel(int index) {
+        checkElementIndex(index, size);
+        return vels[index];
     }
 
     public void append(int step, boolean event, byte note, byte vel) {
-        notes.add(new Note(step, event, note, vel));
+        ensureCapacity(size + 1);
+        set(size, step, event, note, vel);
+        size++;
     }
 
     public void insert(int index, int step, boolean event, byte note, byte vel) {
-        notes.add(index, new Note(step, event, note, vel));
+        checkPositionIndex(index, size);
+        ensureCapacity(size + 1);
+        int tail = size - index;
+        System.arraycopy(steps, index, steps, index + 1, tail);
+        System.arraycopy(events, index, events, index + 1, tail);
+        System.arraycopy(notes, index, notes, index + 1, tail);
+        System.arraycopy(vels, index, vels, index + 1, tail);
+        set(index, step, event, note, vel);
+        size++;
     }
 
     public void remove_at(int index) {
-        notes.remove(index);
+        checkElementIndex(index, size);
+        int tail = size - index - 1;
+        System.arraycopy(steps, index + 1, steps, index, tail);
+        System.arraycopy(events, index + 1, events, index, tail);
+        System.arraycopy(notes, index + 1, notes, index, tail);
+        System.arraycopy(vels, index + 1, vels, index, tail);
+        size--;
     }
 
-    public void regulate() {
-        int[] on_step = new int[128];
-        int[] on_index = new int[128];
-
-        Arrays.fill(on_step, -1);
-        Arrays.fill(on_index, -1);
+    private void set(int index, int step, boolean event, byte note, byte vel) {
+        steps[index] = step;
+        events[index] = event;
+        notes[index] = note;
+        vels[index] = vel;
+    }
 
-        for (int i = 0; i < notes.size(); i++) {
-            Note n = notes.get(i);
-            byte note = n.note;
-            if (!n.event) {
-                if (on_step[note] < 0 || on_index[note] < 0) {
-                    remove_at(i);
-                    i--;
-                }
-                on_step[note] = -1;
-                on_index[note] = -1;
-            } else {
-                if (on_step[note] >= 0 && on_index[note] >= 0) {
-                    insert(i, n.step, false, note, (byte) 64);
-                }
-                on_step[note] = n.step;
-                on_index[note] = i;
-            }
+    private void ensureCapacity(int capacity) {
+        if (capacity > steps.length) {
+            int newLength = Math.max(capacity, steps.length + (steps.length >> 1));
+            steps = Arrays.copyOf(steps, newLength);
+            events = Arrays.copyOf(events, newLength);
+            notes = Arrays.copyOf(notes, newLength);
+            vels = Arrays.copyOf(vels, newLength);
         }
+    }
 
-        int last_step = notes.get(notes.size() - 1).step;
-        for (int i = 0; i < 128; i++) {
-            if (on_step[i] < 0) {
-                continue;
-            }
-            append(last_step + 1, false, (byte) i, (byte) 64);
+    /**
+     * Runs every event through {@code stage}, replacing them with its output.
+     */
+    public void filter(NoteStage stage) {
+        Notes out = new Notes();
+        out.ensureCapacity(size);
+        NoteSink sink = stage.into(out);
+        feed(0, size, sink);
+        sink.end();
+        steps = out.steps;
+        events = out.events;
+        notes = out.notes;
+        vels = out.vels;
+        size = out.size;
+    }
+
+    /**
+     * Passes the events from {@code from} to {@code to - 1} to {@code sink}.
+     */
+    public void feed(int from, int to, NoteSink sink) {
+        for (int i = from; i < to; i++) {
+            sink.accept(steps[i], events[i], notes[i], vels[i]);
         }
     }
 
-    private static void
-            check_on_index_for_remove(int[] on_index, int i_rm) {
+    /**
+     * Returns how many leading events {@link #check} can no longer change,
+     * which are those before the first note still on.
+     */
+    public int settled(int[] on_event) {
+        int settled = size;
         for (int i = 0; i < 128; i++) {
-            if (on_index[i] > i_rm) {
-                on_index[i]--;
+            if (on_event[i] >= 0 && on_event[i] < settled) {
+                settled = on_event[i];
             }
         }
+        return settled;
     }
 
-    public void remove_shortnotes(int min_duration, int min_vel) {
-        int[] on_step = new int[128];
-        int[] on_index = new int[128];
-
-        Arrays.fill(on_step, -1);
-        Arrays.fill(on_index, -1);
-
-        for (int index = 0; index < notes.size(); index++) {
-            Note n = notes.get(index);
-            int note = n.note;
-
-            if (!n.event) {
-                // off event
-                if (on_step[note] < 0 || on_index[note] < 0) {
-                    // no on event on the note
-                    // so remove this orphant off event
-                    remove_at(index);
-                    index--;
-                } else {
-                    int vel = notes.get(on_index[note]).vel;
-                    int duration = notes.get(index).step - on_step[note];
-                    if (duration <= min_duration && vel <= min_vel) {
-                        // remove these on and off events on the note
-                        remove_at(index);
-                        index--;
-
-                        int index_on = on_index[note];
-                        remove_at(index_on);
-                        index--;
-
-                        // need to shift indices on on_index[]
-                        check_on_index_for_remove(on_index, index_on);
-                    }
-                }
+    @Override
+    public void accept(int step, boolean event, byte note, byte vel) {
+        append(step, event, note, vel);
+    }
 
-                // reset on_step[] and on_index[]
-                on_step[note] = -1;
-                on_index[note] = -1;
-            } else {
-                // on event
-                if (on_step[note] >= 0 && on_index[note] >= 0) {
-                    // the note is already on
-                    // so, insert off event here
-                    insert(index,
-                            n.step,
-                            false, // off
-                            (byte) note,
-                            (byte) 64); // default
-                    index++;
-                }
+    public void regulate() {
+        filter(NoteStage.regulate());
+    }
 
-                // set on_step[] and on_index[]
-                on_step[note] = n.step;
-                on_index[note] = index;
-            }
-        }
+    public void remove_shortnotes(int min_duration, int min_vel) {
+        filter(NoteStage.remove_shortnotes(min_duration, min_vel));
     }
 
     public void remove_longnotes(int max_duration, int min_vel) {
-        int[] on_step = new int[128];
-        int[] on_index = new int[128];
-
-        Arrays.fill(on_step, -1);
-        Arrays.fill(on_index, -1);
-
-        for (int index = 0; index < notes.size(); index++) {
-            Note n = notes.get(index);
-            int note = n.note;
-
-            if (!n.event) {
-                // off event
-                if (on_step[note] < 0 || on_index[note] < 0) {
-                    // no on event on the note
-                    // so remove this orphant off event
-                    remove_at(index);
-                    index--;
-                } else {
-                    int vel = notes.get(on_index[note]).vel;
-                    int duration = notes.get(index).step - on_step[note];
-                    if (duration >= max_duration && vel <= min_vel) {
-                        // remove these on and off events on the note
-                        remove_at(index);
-                        index--;
-
-                        int index_on = on_index[note];
-                        remove_at(index_on);
-                        index--;
-
-                        // need to shift indices on on_index[]
-                        check_on_index_for_remove(on_index, index_on);
-                    }
-                }
-
-                // reset on_step[] and on_index[]
-                on_step[note] = -1;
-                on_index[note] = -1;
-            } else {
-                // on event
-                if (on_step[note] >= 0 && on_index[note] >= 0) {
-                    // the note is already on
-                    // so, insert off event here
-                    insert(index,
-                            n.step,
-                            false, // off
-                            (byte) note,
-                            (byte) 64); // default
-                    index++;
-                }
-
-                // set on_step[] and on_index[]
-                on_step[note] = n.step;
-                on_index[note] = index;
-            }
-        }
+        filter(NoteStage.remove_longnotes(max_duration, min_vel));
     }
 
     public void remove_octaves() {
-        int[] on_step = new int[128];
-        int[] on_index = new int[128];
-        BitSet flag_remove = new BitSet(128);
-
-        Arrays.fill(on_step, -1);
-        Arrays.fill(on_index, -1);
-
-        for (int index = 0; index < notes.size(); index++) {
-            Note n = notes.get(index);
-            int note = n.note;
-
-            if (!n.event) {
-                // off event
-                if (on_step[note] < 0 || on_index[note] < 0) {
-                    // no on event on the note
-                    // so remove this orphant off event
-                    remove_at(index);
-                    index--;
-                } else {
-                    if (flag_remove.get(index)) {
-                        // remove these on and off events on the note
-                        remove_at(index);
-                        index--;
-
-                        int index_on = on_index[note];
-                        remove_at(index_on);
-                        index--;
-
-                        // need to shift indices on on_index[]
-                        check_on_index_for_remove(on_index, index_on);
-                    }
-                }
-
-                // reset on_step[] and on_index[]
-                on_step[note] = -1;
-                on_index[note] = -1;
-            } else {
-                // on event
-                if (on_step[note] >= 0 && on_index[note] >= 0) {
-                    // the note is already on
-                    // so, insert off event here
-                    insert(index,
-                            n.step,
-                            false, // off
-                            (byte) note,
-                            (byte) 64); // default
-                    index++;
-                }
-
-                // set on_step[] and on_index[]
-                on_step[note] = n.step;
-                on_index[note] = index;
-
-                flag_remove.clear(note);
-                int note_down = note - 12;
-                if (note_down < 0) {
-                    continue;
-                }
-                if (on_step[note_down] >= 0 && on_index[note_down] >= 0) {
-                    if (n.vel < notes.get(on_index[note_down]).vel) {
-                        flag_remove.set(note);
-                    }
-                }
-            }
-        }
+        filter(NoteStage.remove_octaves());
     }
 
     public void check(int step, byte[] vel, int[] on_event, int on_threshold, int off_threshold, int peak_threshold) {
@@ -314,7 +213,7 @@ public class Notes {
                             true, /* on */
                             (byte) i, // midi note
                             vel[i]);
-                    on_event[i] = notes.size() - 1; // event index of notes.
+                    on_event[i] = size - 1; // event index of notes.
                 }
             } else /* on at last step */
             {
@@ -328,8 +227,8 @@ public class Notes {
                     on_event[i] = -1;
                 } else /* now note is over off_threshold at least */
                 {
-                    Note n = notes.get(on_event[i]);
-                    if (vel[i] >= (n.vel + peak_threshold)) {
+                    int n = on_event[i];
+                    if (vel[i] >= (vels[n] + peak_threshold)) {
                         /* off */
                         append(step,
                                 false, /* off */
@@ -340,10 +239,10 @@ public class Notes {
                                 true, /* on */
                                 (byte) i, // midi note
                                 vel[i]);
-                        on_event[i] = notes.size() - 1; // event index of notes.
-                    } else if (vel[i] > n.vel) {
+                        on_event[i] = size - 1; // event index of notes.
+                    } else if (vel[i] > vels[n]) {
                         /* overwrite velocity */
-                        n.vel = vel[i];
+                        vels[n] = vel[i];
                     }
                 }
             }
@@ -1,210 +1,640 @@
 package me.kenzierocks.a2m.v2;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-
+import java.io.IOException;
 import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntFunction;
 
-import org.bytedeco.javacpp.fftw3;
-import org.bytedeco.javacpp.fftw3.fftw_plan;
+import javax.annotation.Nullable;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
 public class ParallelWindower {
 
-    private static final class Plan {
+    @AutoValue
+    public abstract static class TaskResult {
+
+        public static final class BArr {
 
-        private static final ThreadLocal<Plan> PLANS = new ThreadLocal<>();
+            public final byte[] array;
 
-        public static Plan getPlan(int length) {
-            Plan p = PLANS.get();
-            if (p == null) {
-                p = new Plan(length);
-                PLANS.set(p);
+            public BArr(byte[] array) {
+                this.array = array;
             }
-            return p;
+
         }
 
-        private final fftw_plan plan;
-        private final DoubleBuffer input;
-        private final DoubleBuffer output;
+        public static final class FArr {
 
-        private Plan(int length) {
-            input = fftw3.fftw_alloc_real(length).limit(length).asBuffer();
-            checkNotNull(input, "failed to allocate fftw input");
-            output = fftw3.fftw_alloc_real(length).limit(length).asBuffer();
-            checkNotNull(output, "failed to allocate fftw output");
-            // planner is not thread-safe -- must be sync
-            synchronized (Plan.class) {
-                plan = fftw3.fftw_plan_r2r_1d(length, input, output, fftw3.FFTW_R2HC, (int) fftw3.FFTW_ESTIMATE);
-                checkNotNull(plan, "failed to allocate fftw plan???");
+            public final float[] array;
+
+            public FArr(float[] array) {
+                this.array = array;
             }
+
+        }
+
+        public static TaskResult wrap(byte[] vel, long arrived) {
+            return wrap(vel, null, arrived);
+        }
+
+        public static TaskResult wrap(byte[] vel, @Nullable float[] spectrum, long arrived) {
+            return new AutoValue_ParallelWindower_TaskResult(new BArr(vel),
+                    spectrum != null ? new FArr(spectrum) : null, arrived);
+        }
+
+        TaskResult() {
+        }
+
+        public abstract BArr vel();
+
+        /**
+         * The corrected band of the frame, if the windower was asked to
+         * {@link ParallelWindower#storeSpectra(int) store spectra}.
+         */
+        @Nullable
+        public abstract FArr spectrum();
+
+        /**
+         * When the last sample of the frame was read, from
+         * {@link System#nanoTime()}.
+         */
+        public abstract long arrived();
+
+    }
+
+    /**
+     * The samples of one window, read by the engine that analyzes it. A frame
+     * may be read more than once.
+     */
+    public interface Frame {
+
+        void read(double[] dst, int len);
+
+    }
+
+    /**
+     * Analyzes a block of consecutive frames with the engine.
+     */
+    private static final class Task implements Callable<List<TaskResult>> {
+
+        private final AnalysisEngine engine;
+        private final Frame previous;
+        private final Frame[] inputs;
+        private final int count;
+        private final ArrayPool<byte[]> pool;
+        private final ArrayPool<float[]> spectra;
+        private final long arrived;
+
+        /**
+         * @param previous
+         *            the frame before the block, or {@code null} for the first
+         *            block
+         * @param inputs
+         *            the frames, of which only the first {@code count} are
+         *            used. The last block of the input may be short.
+         * @param spectra
+         *            where to lease the arrays for the spectra, or
+         *            {@code null} to not store them
+         * @param arrived
+         *            when the last frame of the block was read
+         */
+        public Task(AnalysisEngine engine, Frame previous, Frame[] inputs, int count, ArrayPool<byte[]> pool,
+                @Nullable ArrayPool<float[]> spectra, long arrived) {
+            this.engine = engine;
+            this.previous = previous;
+            this.inputs = inputs;
+            this.count = count;
+            this.pool = pool;
+            this.spectra = spectra;
+            this.arrived = arrived;
         }
 
         @Override
-        protected void finalize() throws Throwable {
-            fftw3.fftw_destroy_plan(plan);
+        public List<TaskResult> call() throws Exception {
+            byte[][] vel = new byte[count][];
+            for (int f = 0; f < count; f++) {
+                vel[f] = pool.lease();
+            }
+            if (spectra == null) {
+                engine.analyze(previous, inputs, count, vel);
+                List<TaskResult> results = new ArrayList<>(count);
+                for (int f = 0; f < count; f++) {
+                    results.add(TaskResult.wrap(vel[f], arrived));
+                }
+                return results;
+            }
+            float[][] spectrum = new float[count][];
+            for (int f = 0; f < count; f++) {
+                spectrum[f] = spectra.lease();
+            }
+            engine.analyze(previous, inputs, count, vel, spectrum);
+            List<TaskResult> results = new ArrayList<>(count);
+            for (int f = 0; f < count; f++) {
+                results.add(TaskResult.wrap(vel[f], spectrum[f], arrived));
+            }
+            return results;
         }
 
     }
 
-    @AutoValue
-    public abstract static class TaskResult {
+    /**
+     * Supplies the windows to transform, in order.
+     */
+    private interface FrameFeed extends AutoCloseable {
 
-        public static final class DArr {
+        /**
+         * @return the next window, or {@code null} at the end of input
+         */
+        Frame next() throws IOException;
 
-            public final double[] array;
+        @Override
+        void close();
 
-            public DArr(double[] array) {
-                this.array = array;
+    }
+
+    /**
+     * Reads samples of an input into {@code dst}, from {@code off}.
+     */
+    private interface Samples {
+
+        void read(int from, double[] dst, int off, int count);
+
+    }
+
+    /**
+     * A frame starting at {@code from} of an input of {@code samples}, which
+     * is silent outside the input.
+     */
+    private static Frame padded(int from, int samples, Samples data) {
+        return (dst, n) -> {
+            int lo = Math.max(0, Math.min(n, -from));
+            int hi = Math.max(lo, Math.min(n, samples - from));
+            Arrays.fill(dst, 0, lo, 0.0);
+            data.read(from + lo, dst, lo, hi - lo);
+            Arrays.fill(dst, hi, n, 0.0);
+        };
+    }
+
+    private static Samples samples(DoubleBuffer inputData) {
+        DoubleBuffer data = inputData.duplicate();
+        int base = data.position();
+        return (i, dst, off, count) -> {
+            DoubleBuffer src = data.duplicate();
+            src.position(base + i);
+            src.get(dst, off, count);
+        };
+    }
+
+    private static Samples samples(FloatBuffer inputData) {
+        FloatBuffer data = inputData.duplicate();
+        int base = data.position();
+        return (i, dst, off, count) -> {
+            for (int j = 0; j < count; j++) {
+                dst[off + j] = data.get(base + i + j);
             }
+        };
+    }
 
+    private static final class BufferFeed implements FrameFeed {
+
+        private final Samples data;
+        private final int samples;
+        private final int len;
+        private final int hop;
+        private final int padding;
+        // from the start of the input, negative in the padding
+        private int start;
+
+        BufferFeed(Samples data, int samples, int len, int hop, int padding) {
+            this.data = data;
+            this.samples = samples;
+            this.len = len;
+            this.hop = hop;
+            this.padding = padding;
+            this.start = -padding;
         }
 
-        public static TaskResult wrap(double[] p, double[] ph1) {
-            return new AutoValue_ParallelWindower_TaskResult(new DArr(p), new DArr(ph1));
+        @Override
+        public Frame next() {
+            if (samples + padding - start <= len) {
+                return null;
+            }
+            int from = start;
+            // move up by hop
+            start += hop;
+            if (from < 0 || from + len > samples) {
+                return padded(from, samples, data);
+            }
+            // may be read twice, as the frame before the next block
+            return (dst, n) -> data.read(from, dst, 0, n);
         }
 
-        TaskResult() {
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static final class RingFeed implements FrameFeed {
+
+        private final SampleSource source;
+        private final SampleRing ring;
+        private final int len;
+        private final int hop;
+        private long start;
+
+        RingFeed(SampleSource source, int len, int hop, int padding, int inFlight) {
+            this.source = padding > 0 ? new Padded(source, padding) : source;
+            // every in-flight window, plus the one being filled
+            this.ring = new SampleRing((inFlight + 1) * hop + len, len);
+            this.len = len;
+            this.hop = hop;
+        }
+
+        @Override
+        public Frame next() throws IOException {
+            // same rule as BufferFeed: a window needs one sample after it
+            if (!ring.fill(source, start + len + 1)) {
+                return null;
+            }
+            DoubleBuffer window = ring.window(start);
+            start += hop;
+            return (dst, n) -> window.duplicate().get(dst, 0, n);
+        }
+
+        @Override
+        public void close() {
+            ring.close();
         }
 
-        public abstract DArr p();
+    }
 
-        public abstract DArr ph1();
+    private static final class WavFeed implements FrameFeed {
+
+        private final WavFile wav;
+        private final int len;
+        private final int hop;
+        private final int padding;
+        private int start;
+
+        WavFeed(WavFile wav, int len, int hop, int padding) {
+            this.wav = wav;
+            this.len = len;
+            this.hop = hop;
+            this.padding = padding;
+            this.start = -padding;
+        }
+
+        @Override
+        public Frame next() {
+            int samples = wav.frames();
+            // same rule as BufferFeed: a window needs one sample after it
+            if (samples + padding - start <= len) {
+                return null;
+            }
+            int frame = start;
+            start += hop;
+            if (frame < 0 || frame + len > samples) {
+                return padded(frame, samples, (i, dst, off, count) -> {
+                    double[] inside = new double[count];
+                    wav.read(i, inside, count);
+                    System.arraycopy(inside, 0, dst, off, count);
+                });
+            }
+            // decoded by the worker, straight out of the mapping
+            return (dst, n) -> wav.read(frame, dst, n);
+        }
+
+        @Override
+        public void close() {
+        }
 
     }
 
-    private static final class Task implements Callable<TaskResult> {
+    /**
+     * The samples of another source, with silence before and after them.
+     */
+    private static final class Padded implements SampleSource {
 
-        private final Window window;
-        private final DoubleBuffer input;
-        private final double den;
+        private final SampleSource source;
+        private int before;
+        private int after;
+        private boolean ended;
 
-        public Task(Window window, DoubleBuffer input, double den) {
-            this.window = window;
-            this.input = input;
-            this.den = den;
+        Padded(SampleSource source, int padding) {
+            this.source = source;
+            this.before = padding;
+            this.after = padding;
         }
 
         @Override
-        public TaskResult call() throws Exception {
-            int len = input.remaining();
-            Plan plan = Plan.getPlan(len);
-            plan.input.position(0);
-            plan.output.position(0);
+        public int read(DoubleBuffer dst) throws IOException {
+            if (before > 0) {
+                int n = silence(dst, before);
+                before -= n;
+                return n;
+            }
+            if (!ended) {
+                int n = source.read(dst);
+                if (n >= 0) {
+                    return n;
+                }
+                ended = true;
+            }
+            if (after == 0) {
+                return -1;
+            }
+            int n = silence(dst, after);
+            after -= n;
+            return n;
+        }
 
-            window.windowing(len, input, 1, plan.input);
+        private static int silence(DoubleBuffer dst, int max) {
+            int n = Math.min(max, dst.remaining());
+            for (int i = 0; i < n; i++) {
+                dst.put(0.0);
+            }
+            return n;
+        }
 
-            fftw_execute(plan.plan);
+    }
 
-            double[] p = new double[len];
-            double[] ph1 = new double[len];
-            HC.to_polar2(len, plan.output, 0, den, p, ph1);
-            return TaskResult.wrap(p, ph1);
+    private static final Future<List<TaskResult>> END = CompletableFuture.completedFuture(null);
+
+    // enough work per task to amortize scheduling...
+    private static final int TARGET_SAMPLES_PER_TASK = 64 * 1024;
+    private static final int MAX_FRAMES_PER_TASK = 32;
+    // ...while still giving each core a few tasks
+    private static final int MIN_TASKS_PER_CORE = 4;
+
+    /**
+     * Picks how many frames each task transforms.
+     * 
+     * @param frames
+     *            the total number of frames, or {@code -1} if unknown
+     */
+    static int autoFramesPerTask(int len, long frames) {
+        int batch = Math.max(1, Math.min(MAX_FRAMES_PER_TASK, TARGET_SAMPLES_PER_TASK / len));
+        if (frames >= 0) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            batch = (int) Math.max(1, Math.min(batch, frames / (cores * MIN_TASKS_PER_CORE)));
         }
+        return batch;
+    }
 
+    private static long frameCount(long samples, int len, int hop) {
+        return samples <= len ? 0 : (samples - len - 1) / hop + 1;
     }
 
-    private final Window window;
-    private final DoubleBuffer inputData;
+    private final FrameFeed feed;
     private final int len;
     private final int hop;
-    private final double den;
+    private final int framesPerTask;
+    private final ArrayPool<byte[]> pool;
+    private ArrayPool<float[]> spectra;
+    // assumes good usage is 3x processor size
+    private final int inFlight = Runtime.getRuntime().availableProcessors() * 3;
+    private final BlockingDeque<Future<List<TaskResult>>> queue = new LinkedBlockingDeque<>(inFlight);
+    private Semaphore permits;
+    // shared with other inputs, in frames
+    private Semaphore budget;
+    // what each block takes from the budget
+    private int blockBudget;
+    private Future<?> submitter;
+    private PipelineStats stats;
+    private volatile boolean stopped;
+    private boolean ended;
+
+    /**
+     * @param framesPerTask
+     *            the number of frames each task transforms, or {@code 0} to
+     *            pick automatically
+     * @param padding
+     *            samples of silence before and after the input, see
+     *            {@link AnalysisEngine#padding()}
+     */
+    public ParallelWindower(DoubleBuffer inputData, int len, int hop, int framesPerTask, int padding) {
+        this(len, hop, framesPerTask, frameCount(inputData.remaining() + 2L * padding, len, hop),
+                ringFrames -> new BufferFeed(samples(inputData), inputData.remaining(), len, hop, padding));
+    }
+
+    /**
+     * Windows single-precision samples, read as doubles.
+     */
+    public ParallelWindower(FloatBuffer inputData, int len, int hop, int framesPerTask, int padding) {
+        this(len, hop, framesPerTask, frameCount(inputData.remaining() + 2L * padding, len, hop),
+                ringFrames -> new BufferFeed(samples(inputData), inputData.remaining(), len, hop, padding));
+    }
 
-    public ParallelWindower(Window window, DoubleBuffer inputData, int len, int hop) {
-        this.window = window;
-        this.inputData = inputData;
+    /**
+     * Streams windows out of {@code source} through a fixed-size ring, so
+     * memory use does not depend on the input length.
+     */
+    public ParallelWindower(SampleSource source, int len, int hop, int framesPerTask, int padding) {
+        this(len, hop, framesPerTask, -1,
+                ringFrames -> new RingFeed(source, len, hop, padding, ringFrames));
+    }
+
+    /**
+     * Windows directly out of a memory-mapped WAV file. The file stays owned
+     * by the caller.
+     */
+    public ParallelWindower(WavFile wav, int len, int hop, int framesPerTask, int padding) {
+        this(len, hop, framesPerTask, frameCount(wav.frames() + 2L * padding, len, hop),
+                ringFrames -> new WavFeed(wav, len, hop, padding));
+    }
+
+    private ParallelWindower(int len, int hop, int framesPerTask, long frames, IntFunction<FrameFeed> feed) {
         this.len = len;
         this.hop = hop;
-        this.den = window.init_den(len);
+        this.framesPerTask = framesPerTask > 0 ? framesPerTask : autoFramesPerTask(len, frames);
+        // +1 block for the one the consumer is working through, and +1 frame
+        // for the one before the oldest block
+        this.feed = feed.apply((inFlight + 1) * this.framesPerTask + 1);
+        // an array for every frame in flight, and the one being consumed
+        this.pool = new ArrayPool<>(() -> new byte[128], (inFlight + 1) * this.framesPerTask + 1);
+    }
+
+    public int framesPerTask() {
+        return framesPerTask;
+    }
+
+    /**
+     * Has every result carry the corrected band of its frame, of
+     * {@code length} floats, see
+     * {@link AnalysisEngine#analyze(Frame, Frame[], int, byte[][], float[][])}.
+     * Call before {@link #process}.
+     */
+    public void storeSpectra(int length) {
+        spectra = new ArrayPool<>(() -> new float[length], (inFlight + 1) * framesPerTask + 1);
     }
 
-    public Iterator<TaskResult> process(ExecutorService exec) {
-        Iterator<Future<TaskResult>> bufIter = submitBuffers(exec);
+    /**
+     * Returns the arrays of {@code result} for reuse. The result must not be
+     * used afterwards.
+     */
+    public void recycle(TaskResult result) {
+        pool.release(result.vel().array);
+        if (result.spectrum() != null) {
+            spectra.release(result.spectrum().array);
+        }
+    }
+
+    /**
+     * Starts windowing, returning the analyzed frames in order. Call
+     * {@link #finish()} afterwards, even if not all frames were taken.
+     */
+    public Iterator<TaskResult> process(ProcessorContext context, AnalysisEngine engine) {
+        // a permit is held from submission until the consumer has the result,
+        // which bounds how far behind the ring may still be read
+        permits = new Semaphore(inFlight + 1);
+        budget = context.frameBudget();
+        // a budget smaller than a block still lets one block through at a time
+        blockBudget = Math.min(framesPerTask, context.maxFramesInFlight());
+        stats = context.stats();
+        submitter = context.submitters().submit(() -> submit(context.workers(), engine));
         return new AbstractIterator<ParallelWindower.TaskResult>() {
 
+            private Iterator<TaskResult> block = Collections.emptyIterator();
+
             @Override
             protected TaskResult computeNext() {
-                if (!bufIter.hasNext()) {
-                    return endOfData();
-                }
-                try {
-                    return bufIter.next().get();
-                } catch (ExecutionException e) {
-                    Throwable cause = e.getCause();
-                    Throwables.throwIfUnchecked(cause);
-                    throw new RuntimeException(cause);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
+                while (!block.hasNext()) {
+                    stats.queue(queue.size(), inFlight);
+                    Future<List<TaskResult>> next = takeBlock();
+                    if (next == null) {
+                        return endOfData();
+                    }
+                    try {
+                        block = next.get().iterator();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        Throwables.throwIfUnchecked(cause);
+                        throw new RuntimeException(cause);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    } finally {
+                        releaseBlock();
+                    }
                 }
+                return block.next();
             }
+
         };
     }
 
-    private Iterator<Future<TaskResult>> submitBuffers(ExecutorService exec) {
-        // assumes good usage is 3x processor size
-        BlockingDeque<Future<TaskResult>> bufferQueue = new LinkedBlockingDeque<>(Runtime.getRuntime().availableProcessors() * 3);
-        AtomicBoolean complete = new AtomicBoolean(false);
-        submitSubmitterTask(exec, bufferQueue, complete);
-        return new AbstractIterator<Future<TaskResult>>() {
-
-            private BlockingDeque<Future<TaskResult>> ref = bufferQueue;
-
-            @Override
-            protected Future<TaskResult> computeNext() {
-                if (complete.get()) {
-                    // null out for GC
-                    ref = null;
-                    return endOfData();
-                }
+    /**
+     * Stops submitting frames and waits for the tasks already submitted, after
+     * which the input is no longer read. Frames not taken are dropped.
+     */
+    public void finish() {
+        stopped = true;
+        try {
+            if (submitter == null) {
+                return;
+            }
+            Future<List<TaskResult>> next;
+            while ((next = takeBlock()) != null) {
                 try {
-                    return ref.takeFirst();
+                    next.get();
+                } catch (ExecutionException e) {
+                    // failed, but the result is being dropped anyway
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     throw new RuntimeException(e);
+                } finally {
+                    releaseBlock();
                 }
             }
+        } finally {
+            feed.close();
+        }
+    }
 
-        };
+    /**
+     * Takes the next block from the submitter, or {@code null} at the end.
+     */
+    private Future<List<TaskResult>> takeBlock() {
+        if (ended) {
+            return null;
+        }
+        try {
+            Future<List<TaskResult>> next = queue.takeFirst();
+            if (next == END) {
+                ended = true;
+                return null;
+            }
+            return next;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
     }
 
-    private void submitSubmitterTask(ExecutorService exec, BlockingDeque<Future<TaskResult>> bufferQueue, AtomicBoolean complete) {
-        Thread submitter = new Thread(() -> {
-            while (inputData.remaining() > len) {
-                int lim = inputData.limit();
-                // slice out [pos, pos + len]
-                inputData.limit(inputData.position() + len);
-                DoubleBuffer task = inputData.slice();
-                // reset limit
-                inputData.limit(lim);
-                // move up by hop
-                inputData.position(inputData.position() + hop);
+    private void releaseBlock() {
+        permits.release();
+        budget.release(blockBudget);
+    }
 
-                try {
-                    bufferQueue.putLast(exec.submit(new Task(window, task, den)));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
+    private Void submit(ExecutorService exec, AnalysisEngine engine) throws InterruptedException {
+        Frame previous = null;
+        boolean more = true;
+        while (more && !stopped) {
+            permits.acquire();
+            budget.acquire(blockBudget);
+            Future<List<TaskResult>> next = null;
+            try {
+                Frame[] block = new Frame[framesPerTask];
+                int count = 0;
+                long arrived = 0;
+                while (count < block.length) {
+                    long time = System.nanoTime();
+                    Frame frame = feed.next();
+                    arrived = stats.record(Stage.DECODE, time);
+                    if (frame == null) {
+                        more = false;
+                        break;
+                    }
+                    block[count++] = frame;
+                }
+                if (count > 0) {
+                    next = exec.submit(new Task(engine, previous, block, count, pool, spectra, arrived));
+                    previous = block[count - 1];
                 }
+            } catch (IOException | RuntimeException e) {
+                // hand the failure to the consumer
+                CompletableFuture<List<TaskResult>> error = new CompletableFuture<>();
+                error.completeExceptionally(e);
+                next = error;
+                more = false;
             }
-            complete.set(true);
-        }, "submitter-thread");
-        submitter.start();
-    }
-
-    // split out for profiling purposes
-    private static void fftw_execute(fftw_plan plan) {
-        fftw3.fftw_execute(plan);
+            if (next != null) {
+                queue.putLast(next);
+            } else {
+                releaseBlock();
+            }
+        }
+        queue.putLast(END);
+        return null;
     }
 
 }
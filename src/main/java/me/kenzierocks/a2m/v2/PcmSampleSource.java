@@ -0,0 +1,137 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.DoubleBuffer;
+
+/**
+ * Decodes 16-bit PCM, averaging stereo down to mono.
+ * 
+ * <p>
+ * Bytes are pulled from the stream in large blocks and converted in a single
+ * loop per block, so there is no per-sample stream call.
+ * </p>
+ */
+public class PcmSampleSource implements SampleSource {
+
+    private static final int BLOCK_FRAMES = 16 * 1024;
+
+    private final InputStream stream;
+    private final int channels;
+    private final int frameSize;
+    // offsets of the high and low byte of a sample
+    private final int hi;
+    private final int lo;
+    private final byte[] block;
+    // pending bytes are block[blockPos, blockLen)
+    private int blockPos;
+    private int blockLen;
+    private boolean eof;
+
+    /**
+     * Decodes big-endian samples, as {@code javax.sound} converts to.
+     */
+    public PcmSampleSource(InputStream stream, int channels) {
+        this(stream, channels, true);
+    }
+
+    public PcmSampleSource(InputStream stream, int channels, boolean bigEndian) {
+        if (channels != 2 && channels != 1) {
+            throw new IllegalStateException("Only stereo and mono inputs are supported.");
+        }
+        this.stream = stream;
+        this.channels = channels;
+        this.frameSize = channels * 2;
+        this.block = new byte[BLOCK_FRAMES * frameSize];
+        this.hi = bigEndian ? 0 : 1;
+        this.lo = bigEndian ? 1 : 0;
+    }
+
+    @Override
+    public int read(DoubleBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (blockLen - blockPos < frameSize && !refill()) {
+            return -1;
+        }
+        int frames = Math.min(dst.remaining(), (blockLen - blockPos) / frameSize);
+        int pos = dst.position();
+        byte[] b = block;
+        int j = blockPos;
+        int hi = this.hi;
+        int lo = this.lo;
+        if (channels == 1) {
+            for (int i = 0; i < frames; i++, j += 2) {
+                dst.put(pos + i, DOUBLE((short) ((b[j + hi] << 8) | (b[j + lo] & 0xFF))));
+            }
+        } else {
+            for (int i = 0; i < frames; i++, j += 4) {
+                // average l/r
+                double l = DOUBLE((short) ((b[j + hi] << 8) | (b[j + lo] & 0xFF)));
+                double r = DOUBLE((short) ((b[j + 2 + hi] << 8) | (b[j + 2 + lo] & 0xFF)));
+                dst.put(pos + i, (l + r) / 2);
+            }
+        }
+        blockPos = j;
+        dst.position(pos + frames);
+        return frames;
+    }
+
+    /**
+     * Reads the next block, keeping any partial frame at the front.
+     * 
+     * @return {@code true} if at least one whole frame is available
+     */
+    private boolean refill() throws IOException {
+        int leftover = blockLen - blockPos;
+        System.arraycopy(block, blockPos, block, 0, leftover);
+        blockPos = 0;
+        blockLen = leftover;
+        while (!eof && blockLen < block.length) {
+            int read = stream.read(block, blockLen, block.length - blockLen);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            blockLen += read;
+            if (blockLen >= frameSize && stream.available() <= 0) {
+                // don't block for a full buffer if we can make progress
+                break;
+            }
+        }
+        // a trailing partial frame is dropped
+        return blockLen >= frameSize;
+    }
+
+    private static final double DTS_FACTOR = Math.pow(2, Short.SIZE - 1);
+
+    private static double DOUBLE(short s) {
+        return s / DTS_FACTOR;
+    }
+
+}
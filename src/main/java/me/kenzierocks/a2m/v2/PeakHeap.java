@@ -0,0 +1,105 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.Arrays;
+
+/**
+ * Max-heap of spectrum bins, ordered by power and then by lowest index, which
+ * is the order {@link Analyze#note_intensity} finds peaks in. Keys are copied
+ * in, so bins zeroed after being pushed must be skipped by the caller.
+ */
+final class PeakHeap {
+
+    private static final ThreadLocal<PeakHeap> HEAPS = ThreadLocal.withInitial(PeakHeap::new);
+
+    /**
+     * Returns an empty heap owned by this thread.
+     */
+    static PeakHeap get() {
+        PeakHeap heap = HEAPS.get();
+        heap.size = 0;
+        return heap;
+    }
+
+    private double[] value = new double[64];
+    private int[] index = new int[64];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    void push(double v, int i) {
+        if (size == value.length) {
+            value = Arrays.copyOf(value, size * 2);
+            index = Arrays.copyOf(index, size * 2);
+        }
+        int k = size++;
+        // sift up
+        while (k > 0) {
+            int parent = (k - 1) >> 1;
+            if (!above(v, i, value[parent], index[parent])) {
+                break;
+            }
+            value[k] = value[parent];
+            index[k] = index[parent];
+            k = parent;
+        }
+        value[k] = v;
+        index[k] = i;
+    }
+
+    /**
+     * Removes the top entry and returns its bin.
+     */
+    int pop() {
+        int top = index[0];
+        size--;
+        double v = value[size];
+        int i = index[size];
+        int k = 0;
+        // sift down
+        for (int child = 1; child < size; child = 2 * k + 1) {
+            if (child + 1 < size && above(value[child + 1], index[child + 1], value[child], index[child])) {
+                child++;
+            }
+            if (!above(value[child], index[child], v, i)) {
+                break;
+            }
+            value[k] = value[child];
+            index[k] = index[child];
+            k = child;
+        }
+        value[k] = v;
+        index[k] = i;
+        return top;
+    }
+
+    private static boolean above(double v1, int i1, double v2, int i2) {
+        return v1 > v2 || (v1 == v2 && i1 < i2);
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.function.DoubleToIntFunction;
+
+/**
+ * How {@link Analyze} picks the peaks of a frame. Both give the same
+ * velocities.
+ */
+public enum PeakSearch {
+    /**
+     * Rescans the band for the strongest bin once per peak.
+     */
+    SCAN {
+
+        @Override
+        public void note_intensity(double[] p, double[] fp, double cut_ratio, double rel_cut_ratio, int i0, int i1,
+                double t0, byte[] intens, DoubleToIntFunction get_note) {
+            Analyze.note_intensity(p, fp, cut_ratio, rel_cut_ratio, i0, i1, t0, intens, get_note);
+        }
+
+    },
+    /**
+     * Collects local maxima in one pass and takes them from a heap.
+     */
+    HEAP {
+
+        @Override
+        public void note_intensity(double[] p, double[] fp, double cut_ratio, double rel_cut_ratio, int i0, int i1,
+                double t0, byte[] intens, DoubleToIntFunction get_note) {
+            Analyze.note_intensity_heap(p, fp, cut_ratio, rel_cut_ratio, i0, i1, t0, intens, get_note);
+        }
+
+    };
+
+    public abstract void note_intensity(double[] p, double[] fp, double cut_ratio, double rel_cut_ratio, int i0,
+            int i1, double t0, byte[] intens, DoubleToIntFunction get_note);
+
+}
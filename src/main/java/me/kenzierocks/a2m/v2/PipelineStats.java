@@ -0,0 +1,419 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters for where conversion time goes, kept by every
+ * {@link ProcessorContext} and cheap enough to always be on.
+ * 
+ * <p>
+ * Each stage records how often it ran and for how long, in a histogram of
+ * powers of two. While the context is open, the numbers are published over
+ * JMX under {@code me.kenzierocks.a2m}. When the JVM has Flight Recorder, they
+ * are also emitted as the JFR events of {@link JfrEvents}.
+ * </p>
+ */
+public final class PipelineStats {
+
+    public enum Stage {
+        /**
+         * Decoding audio ahead of the workers: all of it up front, or as it
+         * streams into the ring.
+         */
+        DECODE,
+        /**
+         * Reading the samples of each frame and applying the window. For
+         * mapped WAV files this is where they are decoded.
+         */
+        WINDOW,
+        /**
+         * One batched FFTW execute per task.
+         */
+        FFT,
+        /**
+         * Running a filter bank over each frame, for the engines other than
+         * {@link Engine#FFT}.
+         */
+        BANK,
+        /**
+         * Converting each spectrum to power and phase.
+         */
+        POLAR,
+        /**
+         * The phase-vocoder frequency correction.
+         */
+        PHASE,
+        /**
+         * Picking notes out of the spectrum.
+         */
+        PEAKS,
+        /**
+         * Writing corrected spectra to a {@link SpectralCache}, or reading
+         * them back.
+         */
+        SPECTRA,
+        /**
+         * Turning note velocities into on and off events.
+         */
+        CHECK,
+        /**
+         * The note post-processing.
+         */
+        FILTER,
+        /**
+         * Writing the MIDI file.
+         */
+        MIDI;
+
+        private final String label = name().toLowerCase();
+
+    }
+
+    public interface StageMXBean {
+
+        long getCalls();
+
+        long getTotalNanos();
+
+        long getMeanNanos();
+
+        long getMedianNanos();
+
+        long getP99Nanos();
+
+        long getMaxNanos();
+
+    }
+
+    public interface PipelineMXBean {
+
+        long getConversions();
+
+        long getFrames();
+
+        double getAudioSeconds();
+
+        /**
+         * Audio converted per second spent converting each file.
+         */
+        double getRealtimeFactor();
+
+        /**
+         * Audio converted per second since the context was opened, which
+         * counts files converted at the same time once.
+         */
+        double getOverallRealtimeFactor();
+
+        /**
+         * How full the queue of tasks ahead of the consumer was, on average,
+         * as a fraction of its capacity.
+         */
+        double getQueueOccupancy();
+
+        int getMaxQueueSize();
+
+    }
+
+    // bucket b counts times in [2^(b-1), 2^b) ns, bucket 0 counts 0 ns
+    private static final int BUCKETS = 64;
+
+    public static final class StageStats implements StageMXBean {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        StageStats() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long time) {
+            calls.increment();
+            nanos.add(time);
+            max.accumulate(time);
+            buckets[BUCKETS - Long.numberOfLeadingZeros(Math.max(0, time))].increment();
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+
+        @Override
+        public long getMeanNanos() {
+            long n = calls.sum();
+            return n == 0 ? 0 : nanos.sum() / n;
+        }
+
+        @Override
+        public long getMedianNanos() {
+            return percentile(0.5);
+        }
+
+        @Override
+        public long getP99Nanos() {
+            return percentile(0.99);
+        }
+
+        @Override
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        /**
+         * Returns the time under which {@code fraction} of the calls took,
+         * rounded up to the power of two bounding its bucket.
+         */
+        public long percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    long bound = i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(bound, max.get());
+                }
+            }
+            return 0;
+        }
+
+    }
+
+    private static final boolean JFR = jfrAvailable();
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PipelineStats.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private final StageStats[] stages = new StageStats[Stage.values().length];
+    private final StageStats latency = new StageStats();
+    private final long created = System.nanoTime();
+    private final LongAdder conversions = new LongAdder();
+    private final LongAdder audioNanos = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder queueSize = new LongAdder();
+    private final LongAdder queueCapacity = new LongAdder();
+    private final LongAccumulator maxQueueSize = new LongAccumulator(Math::max, 0);
+    private final Pipeline pipeline = new Pipeline();
+    private ObjectName[] registered;
+
+    public PipelineStats() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new StageStats();
+        }
+    }
+
+    public StageStats stage(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /**
+     * In live mode, the time from reading the last sample of a frame to
+     * sending the events it caused.
+     */
+    public StageStats latency() {
+        return latency;
+    }
+
+    /**
+     * Records {@code stage} as having run from {@code start} until now, both
+     * from {@link System#nanoTime()}.
+     * 
+     * @return now, to start timing the next stage from
+     */
+    public long record(Stage stage, long start) {
+        long now = System.nanoTime();
+        stages[stage.ordinal()].record(now - start);
+        if (JFR) {
+            JfrEvents.stage(stage.label, now - start);
+        }
+        return now;
+    }
+
+    /**
+     * Records a finished conversion of {@code audioSeconds} of audio, which
+     * started at {@code start}.
+     */
+    public void conversion(double audioSeconds, long start) {
+        long wall = System.nanoTime() - start;
+        conversions.increment();
+        audioNanos.add((long) (audioSeconds * 1e9));
+        wallNanos.add(wall);
+        if (JFR) {
+            JfrEvents.conversion(audioSeconds, wall);
+        }
+    }
+
+    /**
+     * Samples how many tasks were queued ahead of the consumer, out of
+     * {@code capacity}.
+     */
+    public void queue(int size, int capacity) {
+        queueSize.add(size);
+        queueCapacity.add(capacity);
+        maxQueueSize.accumulate(size);
+    }
+
+    public PipelineMXBean pipeline() {
+        return pipeline;
+    }
+
+    private final class Pipeline implements PipelineMXBean {
+
+        @Override
+        public long getConversions() {
+            return conversions.sum();
+        }
+
+        @Override
+        public long getFrames() {
+            return stage(Stage.PEAKS).getCalls();
+        }
+
+        @Override
+        public double getAudioSeconds() {
+            return audioNanos.sum() / 1e9;
+        }
+
+        @Override
+        public double getRealtimeFactor() {
+            long wall = wallNanos.sum();
+            return wall == 0 ? 0 : (double) audioNanos.sum() / wall;
+        }
+
+        @Override
+        public double getOverallRealtimeFactor() {
+            return (double) audioNanos.sum() / (System.nanoTime() - created);
+        }
+
+        @Override
+        public double getQueueOccupancy() {
+            long capacity = queueCapacity.sum();
+            return capacity == 0 ? 0 : (double) queueSize.sum() / capacity;
+        }
+
+        @Override
+        public int getMaxQueueSize() {
+            return (int) maxQueueSize.get();
+        }
+
+    }
+
+    /**
+     * Publishes these stats over JMX, under {@code id} to tell contexts apart.
+     * Failures are ignored, the stats are still kept.
+     */
+    synchronized void register(String id) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName[] names = new ObjectName[stages.length + 2];
+        try {
+            names[0] = new ObjectName("me.kenzierocks.a2m:type=Pipeline,context=" + id);
+            server.registerMBean(pipeline, names[0]);
+            for (Stage stage : Stage.values()) {
+                ObjectName name = new ObjectName("me.kenzierocks.a2m:type=Stage,context=" + id + ",name=" + stage.label);
+                server.registerMBean(stage(stage), name);
+                names[stage.ordinal() + 1] = name;
+            }
+            names[stages.length + 1] = new ObjectName("me.kenzierocks.a2m:type=Latency,context=" + id);
+            server.registerMBean(latency, names[stages.length + 1]);
+        } catch (JMException | SecurityException e) {
+            // leave whatever did register to unregister()
+        }
+        registered = names;
+    }
+
+    synchronized void unregister() {
+        if (registered == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            if (name == null) {
+                continue;
+            }
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException | SecurityException e) {
+                // not registered
+            }
+        }
+        registered = null;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Converted %d file(s), %.1f s of audio at %.1fx realtime (%.1fx overall)%n",
+                pipeline.getConversions(), pipeline.getAudioSeconds(), pipeline.getRealtimeFactor(),
+                pipeline.getOverallRealtimeFactor());
+        out.printf("Task queue: %.0f%% full on average, at most %d%n", pipeline.getQueueOccupancy() * 100,
+                pipeline.getMaxQueueSize());
+        long total = 0;
+        for (StageStats stats : stages) {
+            total += stats.getTotalNanos();
+        }
+        out.printf("%-8s %10s %10s %6s %10s %10s %10s%n", "stage", "calls", "total ms", "share", "mean us",
+                "p99 us", "max us");
+        for (Stage stage : Stage.values()) {
+            StageStats stats = stage(stage);
+            out.printf("%-8s %,10d %,10d %5.1f%% %,10.1f %,10.1f %,10.1f%n", stage.label, stats.getCalls(),
+                    TimeUnit.NANOSECONDS.toMillis(stats.getTotalNanos()),
+                    total == 0 ? 0 : stats.getTotalNanos() * 100.0 / total,
+                    stats.getMeanNanos() / 1e3, stats.getP99Nanos() / 1e3, stats.getMaxNanos() / 1e3);
+        }
+        if (latency.getCalls() > 0) {
+            out.printf("Live latency: %,d events, mean %.1f ms, p99 %.1f ms, max %.1f ms%n", latency.getCalls(),
+                    latency.getMeanNanos() / 1e6, latency.getP99Nanos() / 1e6, latency.getMaxNanos() / 1e6);
+        }
+    }
+
+}
\ No newline at end of file
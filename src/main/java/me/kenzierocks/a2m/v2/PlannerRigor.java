@@ -0,0 +1,50 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import org.bytedeco.javacpp.fftw3;
+
+/**
+ * How hard FFTW searches for a fast plan. Anything above {@link #ESTIMATE}
+ * times real transforms when planning, which is slow the first time but free
+ * once the result is in the wisdom.
+ */
+public enum PlannerRigor {
+    ESTIMATE(fftw3.FFTW_ESTIMATE),
+    MEASURE(fftw3.FFTW_MEASURE),
+    PATIENT(fftw3.FFTW_PATIENT),
+    EXHAUSTIVE(fftw3.FFTW_EXHAUSTIVE);
+
+    private final int flags;
+
+    PlannerRigor(long flags) {
+        this.flags = (int) flags;
+    }
+
+    public int flags() {
+        return flags;
+    }
+
+}
@@ -27,16 +27,18 @@ package me.kenzierocks.a2m.v2;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -44,26 +46,163 @@ import javax.sound.sampled.AudioSystem;
 
 import org.lwjgl.system.MemoryUtil;
 
-import me.kenzierocks.a2m.MidiFreqRelations;
 import me.kenzierocks.a2m.v2.ParallelWindower.TaskResult;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
 
 public class Processor {
 
+    /**
+     * Windows an opened input, once the engine has picked the frame length.
+     */
+    private interface Windowers {
+
+        ParallelWindower create(int len, int hop, int padding);
+
+    }
+
+    /**
+     * An opened input, ready to be windowed.
+     */
+    private static final class AudioInput implements Closeable {
+
+        // after decimating
+        private final float sampleRate;
+        // in samples, or NOT_SPECIFIED
+        private final long size;
+        // what the rate was divided by
+        private final int factor;
+        private final Windowers windowers;
+        private final Closeable resource;
+
+        AudioInput(float sampleRate, long size, int factor, Windowers windowers, Closeable resource) {
+            this.sampleRate = sampleRate;
+            this.size = size;
+            this.factor = factor;
+            this.windowers = windowers;
+            this.resource = resource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            resource.close();
+        }
+
+    }
+
+    /**
+     * Turns the velocities of each frame into notes, post-processing them as
+     * they settle.
+     */
+    private static final class NoteCollector {
+
+        private final PipelineStats stats;
+        private final int on_threshold;
+        /* to select peaks in a note */
+        private final int peak_threshold;
+        private final Notes notes = new Notes();
+        private final int[] on_event = new int[128];
+        private final Notes filtered = new Notes();
+        private final NoteSink post;
+        private int fed;
+
+        NoteCollector(ProcessorConfig config, PipelineStats stats) {
+            this.stats = stats;
+            this.on_threshold = config.onThreshold();
+            this.peak_threshold = config.peakThreshold();
+            Arrays.fill(on_event, -1);
+            // events go through the post-processing once check() is done with them
+            List<NoteStage> stages = new ArrayList<>();
+            stages.add(NoteStage.regulate());
+            List<Integer> shortNotes = config.shortNoteVelocities();
+            for (int i = 0; i < shortNotes.size(); i++) {
+                stages.add(NoteStage.remove_shortnotes(i + 1, shortNotes.get(i)));
+            }
+            stages.add(NoteStage.remove_octaves());
+            this.post = NoteStage.chain(stages.toArray(new NoteStage[0])).into(filtered);
+        }
+
+        /**
+         * Checks the velocities of frame {@code icnt}.
+         */
+        void frame(int icnt, byte[] vel) {
+            long time = System.nanoTime();
+            notes.check(icnt, vel, on_event, on_threshold, 0, peak_threshold);
+            time = stats.record(Stage.CHECK, time);
+
+            int settled = notes.settled(on_event);
+            notes.feed(fed, settled, post);
+            fed = settled;
+            stats.record(Stage.FILTER, time);
+        }
+
+        /**
+         * Post-processes the notes still open, returning every note.
+         */
+        Notes end() {
+            notes.feed(fed, notes.count(), post);
+            post.end();
+            return filtered;
+        }
+
+    }
+
+    private final Path input;
     private final InputStream stream;
     private final OutputStream out;
+    private final ProcessorConfig config;
 
     public Processor(InputStream stream, OutputStream out) {
+        this(stream, out, ProcessorConfig.defaults());
+    }
+
+    public Processor(InputStream stream, OutputStream out, ProcessorConfig config) {
+        this.input = null;
         this.stream = stream;
         this.out = out;
+        this.config = config;
+    }
+
+    /**
+     * Reads from a file, which allows WAV input to be memory-mapped.
+     */
+    public Processor(Path input, OutputStream out, ProcessorConfig config) {
+        this.input = input;
+        this.stream = null;
+        this.out = out;
+        this.config = config;
     }
 
     public void process() throws Exception {
+        FftwWisdom.loadFor(config);
+
+        try (ProcessorContext context = new ProcessorContext(config.planner(), 0)) {
+            try {
+                process(context);
+            } finally {
+                FftPlans plans = context.plans();
+                System.err.printf("FFT plans: %d, holding %,d bytes native%n", plans.planCount(),
+                        plans.nativeBytes());
+                if (config.stats()) {
+                    context.stats().print(System.err);
+                }
+            }
+        }
+        FftwWisdom.saveFor(config);
+    }
+
+    /**
+     * Converts the input using the workers and plans of {@code context}, which
+     * may be shared with other inputs converted at the same time. FFTW wisdom
+     * is left to the owner of the context.
+     */
+    public void process(ProcessorContext context) throws Exception {
+        long start = System.nanoTime();
+        PipelineStats stats = context.stats();
         double cut_ratio; // log10 of cutoff ratio for scale velocity
-        cut_ratio = -5.0;
+        cut_ratio = config.cutRatio();
         double rel_cut_ratio; // log10 of cutoff ratio relative to average
-        rel_cut_ratio = 1.0; // this value is ignored when abs_flg == 1
+        rel_cut_ratio = config.relCutRatio(); // this value is ignored when abs_flg == 1
         int len = 4096;
-        Window flag_window = StandardWindows.HANNING;
         /* for 76 keys piano */
         int notetop = 103; /* G8 */
         int notelow = 28; /* E2 */
@@ -72,66 +211,41 @@ public class Processor {
 
         int hop = len / 8;
         Extern.adj_pitch = 0.0;
-        /* to select peaks in a note */
-        int peak_threshold = 128; /* this means no peak search */
 
         // boolean flag_phase = true; // use the phase correction
         // int psub_n = 0;
         // double psub_f = 0.0;
         // double oct_f = 0.0;
 
-        Notes notes = new Notes();
-        byte[] vel = new byte[128];
-        int[] on_event = new int[128];
-        Arrays.fill(on_event, -1);
-
-        double[] p = new double[(len / 2) + 1];
-        double[] p0 = new double[(len / 2) + 1];
-        double[] dphi = new double[(len / 2) + 1];
-        double[] ph0 = new double[(len / 2) + 1];
-        double[] ph1 = new double[(len / 2) + 1];
-
-        AudioInputStream __temp = AudioSystem.getAudioInputStream(stream);
-        AudioFormat __temp_format = __temp.getFormat();
-
-        AudioFormat sfinfo = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
-                __temp_format.getSampleRate(),
-                16,
-                __temp_format.getChannels(),
-                __temp_format.getChannels() * 2,
-                __temp_format.getSampleRate(),
-                true);
-        InputStream sf = AudioSystem.getAudioInputStream(sfinfo, __temp);
-        sf = new BufferedInputStream(sf);
-
-        System.err.println(sfinfo);
-
-        if (sfinfo.getChannels() != 2 && sfinfo.getChannels() != 1) {
-            throw new IllegalStateException("Only stereo and mono inputs are supported.");
-        }
-
-        double t0 = ((double) len) / sfinfo.getSampleRate();
-
-        /* set range to analyse (search notes) */
-        /* -- after 't0' is calculated */
-        int i0 = (int) (MidiFreqRelations.mid2freq[notelow] * t0 - 0.5);
-        int i1 = (int) (MidiFreqRelations.mid2freq[notetop] * t0 - 0.5) + 1;
-        if (i0 <= 0) {
-            i0 = 1; // i0=0 means DC component (frequency = 0)
-        }
-        if (i1 >= (len / 2)) {
-            i1 = len / 2 - 1;
+        NoteCollector notes = new NoteCollector(config, stats);
+
+        SpectralCache.Key key = null;
+        if (config.spectralCache() != null) {
+            checkState(input != null, "spectra can only be cached for file input");
+            checkState(config.engine().storesSpectra(), "the %s engine can't cache spectra", config.engine());
+            long time = System.nanoTime();
+            key = SpectralCache.Key.of(SpectralCache.hash(input), len, hop, config.window(), config.engine(),
+                    config.decimate(), config.singlePrecision(), notelow, notetop);
+            SpectralCache cache = SpectralCache.open(config.spectralCache(), key);
+            stats.record(Stage.SPECTRA, time);
+            if (cache != null) {
+                System.err.println("Replaying " + cache.frames() + " frames of spectra from "
+                        + config.spectralCache());
+                replay(cache, notes, cut_ratio, rel_cut_ratio, notelow, notetop, stats);
+                double seconds = (double) cache.frames() * cache.hop() / cache.sampleRate();
+                finish(notes, cache.sampleRate(), cache.hop(), seconds, start, stats);
+                return;
+            }
         }
 
-        DoubleBuffer audioData = readAudioData(sf, sfinfo);
-        int size = audioData.remaining();
-
-        ExecutorService pool = Executors.newWorkStealingPool();
-        Iterator<TaskResult> buffers = new ParallelWindower(flag_window, audioData, len, hop)
-                .process(pool);
+        AudioInput audio = openInput(hop, notetop, context);
+        float sampleRate = audio.sampleRate;
+        // the same resolution and hop in seconds, at the decimated rate
+        len /= audio.factor;
+        hop /= audio.factor;
 
         // Samples per second (s/e)
-        double sampsPerSecond = sfinfo.getSampleRate();
+        double sampsPerSecond = sampleRate;
         // Samples per hop (s/h)
         double sampsPerHop = hop;
         // e/h = (s/h)/(s/e)
@@ -139,113 +253,221 @@ public class Processor {
         System.err.printf("%,f sec/loop%n", secondsPerHop);
 
         // size is in samples
-        System.err.println("Estimated audio length: " + formatSeconds(size / sampsPerSecond));
+        if (audio.size != AudioSystem.NOT_SPECIFIED) {
+            System.err.println("Estimated audio length: " + formatSeconds(audio.size / sampsPerSecond));
+        }
 
         Extern.pitch_shift = 0.0;
         Extern.n_pitch = 0;
         double seconds = 0;
         double prevSeconds = 0;
-        for (int icnt = 0; buffers.hasNext(); icnt++) {
-            TaskResult res = buffers.next();
-            p = res.p().array;
-            ph1 = res.ph1().array;
-
-            seconds += secondsPerHop;
-
-            while ((seconds - prevSeconds) >= 10) {
-                prevSeconds += 10;
-                System.err.println(formatSeconds(prevSeconds));
+        ParallelWindower windower = null;
+        SpectralCache.Writer spectra = null;
+        try {
+            AnalysisEngine engine = config.engine().create(config, context, len, hop, sampleRate, cut_ratio,
+                    rel_cut_ratio, notelow, notetop);
+            windower = audio.windowers.create(engine.len(), hop, engine.padding());
+            if (key != null) {
+                FrameAnalyzer analyzer = engine.analyzer();
+                spectra = new SpectralCache.Writer(config.spectralCache(), key, sampleRate, len, hop,
+                        analyzer.bandFrom(), analyzer.bandTo());
+                windower.storeSpectra(analyzer.spectrumLength());
             }
+            Iterator<TaskResult> buffers = windower.process(context, engine);
+            for (int icnt = 0; buffers.hasNext(); icnt++) {
+                TaskResult res = buffers.next();
 
-            // with phase-vocoder correction
-            if (icnt == 0) {
-                // first step, so no ph0[] yet
-                for (int i = 0; i < (len / 2 + 1); ++i) {
-                    // no correction
-                    dphi[i] = 0.0;
+                seconds += secondsPerHop;
 
-                    // backup the phase for the next step
-                    p0[i] = p[i];
-                    ph0[i] = ph1[i];
+                while ((seconds - prevSeconds) >= 10) {
+                    prevSeconds += 10;
+                    System.err.println(formatSeconds(prevSeconds));
                 }
-            } else {
-                // freq correction by phase difference
-                for (int i = 0; i < (len / 2 + 1); ++i) {
-                    double twopi = 2.0 * Math.PI;
-                    // double dphi;
-                    dphi[i] = ph1[i] - ph0[i]
-                            - twopi * (double) i / (double) len * (double) hop;
-                    for (; dphi[i] >= Math.PI; dphi[i] -= twopi)
-                        ;
-                    for (; dphi[i] < -Math.PI; dphi[i] += twopi)
-                        ;
-
-                    // frequency correction
-                    // NOTE: freq is (i / len + dphi) * samplerate [Hz]
-                    dphi[i] = dphi[i] / twopi / (double) hop;
-
-                    // backup the phase for the next step
-                    p0[i] = p[i];
-                    ph0[i] = ph1[i];
-
-                    // then, average the power for the analysis
-                    p[i] = 0.5 * (Math.sqrt(p[i]) + Math.sqrt(p0[i]));
-                    p[i] = p[i] * p[i];
+
+                if (spectra != null) {
+                    long time = System.nanoTime();
+                    spectra.write(res.spectrum().array);
+                    stats.record(Stage.SPECTRA, time);
                 }
+                notes.frame(icnt, res.vel().array);
+                windower.recycle(res);
             }
-
-            // with phase-vocoder correction
-            // make corrected frequency (i / len + dphi) * samplerate [Hz]
-            for (int i = 0; i < (len / 2 + 1); ++i) {
-                dphi[i] = ((double) i / (double) len + dphi[i])
-                        * (double) sfinfo.getSampleRate();
+            if (spectra != null) {
+                if (spectra.commit()) {
+                    System.err.println("Cached spectra in " + config.spectralCache());
+                } else {
+                    System.err.println("Spectra too long to cache");
+                }
             }
-            Analyze.note_intensity(p, dphi,
-                    cut_ratio, rel_cut_ratio, i0, i1, t0, vel);
-
-            notes.check(icnt, vel, on_event, 8, 0, peak_threshold);
+        } finally {
+            // on failure, tasks may still be reading the audio
+            if (windower != null) {
+                windower.finish();
+            }
+            if (spectra != null) {
+                spectra.close();
+            }
+            audio.close();
         }
-        pool.shutdown();
 
         System.err.println();
 
-        notes.regulate();
-        notes.remove_shortnotes(1, 64);
-        notes.remove_shortnotes(2, 28);
-        notes.remove_octaves();
+        finish(notes, sampleRate, hop, seconds, start, stats);
+    }
+
+    /**
+     * Picks the notes out of cached spectra, with the thresholds of this
+     * processor.
+     */
+    private void replay(SpectralCache cache, NoteCollector notes, double cut_ratio, double rel_cut_ratio,
+            int notelow, int notetop, PipelineStats stats) {
+        FrameAnalyzer analyzer = Engine.analyzer(config, cache.len(), cache.hop(), cache.sampleRate(), cut_ratio,
+                rel_cut_ratio, notelow, notetop);
+        checkState(analyzer.bandFrom() == cache.bandFrom() && analyzer.bandTo() == cache.bandTo(),
+                "cached band [%s, %s) is not the analyzed band [%s, %s)", cache.bandFrom(), cache.bandTo(),
+                analyzer.bandFrom(), analyzer.bandTo());
+        double[][] arrays = WindowHelper.getAnalysisArrays(2, cache.len() / 2 + 1);
+        double[] p = arrays[0];
+        double[] dphi = arrays[1];
+        float[] spectrum = new float[analyzer.spectrumLength()];
+        byte[] vel = new byte[128];
+        for (int icnt = 0; icnt < cache.frames(); icnt++) {
+            long time = System.nanoTime();
+            cache.read(icnt, spectrum);
+            analyzer.load(spectrum, p, dphi);
+            time = stats.record(Stage.SPECTRA, time);
+            analyzer.search(p, dphi, vel);
+            stats.record(Stage.PEAKS, time);
+            notes.frame(icnt, vel);
+        }
+    }
+
+    private void finish(NoteCollector notes, float sampleRate, int hop, double seconds, long start,
+            PipelineStats stats) throws IOException {
+        long time = System.nanoTime();
+        Notes filtered = notes.end();
+        time = stats.record(Stage.FILTER, time);
 
-        long div = (long) (0.5 * (double) sfinfo.getSampleRate() / (double) hop);
-        Midi.output_midi(notes, div, out);
+        long div = (long) (0.5 * (double) sampleRate / (double) hop);
+        Midi.output_midi(filtered, div, out);
+        stats.record(Stage.MIDI, time);
+        stats.conversion(seconds, start);
+    }
+
+    private AudioInput openInput(int hop, int notetop, ProcessorContext context) throws Exception {
+        if (input != null && config.mapWav()) {
+            WavFile wav = WavFile.open(input);
+            if (wav != null) {
+                System.err.println("Mapped WAV: " + wav.sampleRate() + " Hz, " + wav.channels() + " channels");
+                int factor = factor(wav.sampleRate(), notetop, hop);
+                if (factor == 1) {
+                    return new AudioInput(wav.sampleRate(), wav.frames(), 1,
+                            (len, h, padding) -> new ParallelWindower(wav, len, h, config.framesPerTask(), padding),
+                            wav);
+                }
+                try {
+                    // decimating reads the samples in order
+                    return openSource(wav.source(), wav.sampleRate(), wav.frames(), wav.frames(), factor, notetop,
+                            context, wav);
+                } catch (Exception e) {
+                    wav.close();
+                    throw e;
+                }
+            }
+        }
+        InputStream in = input != null ? new BufferedInputStream(Files.newInputStream(input)) : stream;
+        try {
+            AudioInputStream __temp = AudioSystem.getAudioInputStream(in);
+            AudioFormat __temp_format = __temp.getFormat();
+
+            AudioFormat sfinfo = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                    __temp_format.getSampleRate(),
+                    16,
+                    __temp_format.getChannels(),
+                    __temp_format.getChannels() * 2,
+                    __temp_format.getSampleRate(),
+                    true);
+            AudioInputStream sf = AudioSystem.getAudioInputStream(sfinfo, __temp);
+
+            System.err.println(sfinfo);
+
+            SampleSource source = new PcmSampleSource(sf, sfinfo.getChannels());
+            // only close streams we opened
+            Closeable owned = input != null ? in : () -> {
+            };
+            return openSource(source, sfinfo.getSampleRate(), sf.getFrameLength(), sf.available() / Short.SIZE,
+                    factor(sfinfo.getSampleRate(), notetop, hop), notetop, context, owned);
+        } catch (Exception e) {
+            if (input != null) {
+                in.close();
+            }
+            throw e;
+        }
+    }
+
+    private int factor(float sampleRate, int notetop, int hop) {
+        return config.decimate() ? Decimator.factor(sampleRate, notetop, hop) : 1;
+    }
+
+    /**
+     * Streams or decodes up front a source read in order, decimating it by
+     * {@code factor} on the way.
+     */
+    private AudioInput openSource(SampleSource source, float sampleRate, long size, int expectedSize, int factor,
+            int notetop, ProcessorContext context, Closeable owned) throws IOException {
+        if (factor > 1) {
+            System.err.printf("Decimating by %d to %.0f Hz%n", factor, sampleRate / factor);
+            source = new Decimator(source, sampleRate, factor, notetop);
+            sampleRate /= factor;
+            if (size != AudioSystem.NOT_SPECIFIED) {
+                size /= factor;
+            }
+            expectedSize /= factor;
+        }
+        if (config.streaming()) {
+            SampleSource streamed = source;
+            return new AudioInput(sampleRate, size, factor,
+                    (len, hop, padding) -> new ParallelWindower(streamed, len, hop, config.framesPerTask(), padding),
+                    owned);
+        }
+        long time = System.nanoTime();
+        if (config.singlePrecision()) {
+            FloatBuffer audioData = readFloatAudioData(source, expectedSize);
+            context.stats().record(Stage.DECODE, time);
+            return new AudioInput(sampleRate, audioData.remaining(), factor,
+                    (len, hop, padding) -> new ParallelWindower(audioData, len, hop, config.framesPerTask(), padding),
+                    () -> {
+                        MemoryUtil.memFree(audioData);
+                        owned.close();
+                    });
+        }
+        DoubleBuffer audioData = readAudioData(source, expectedSize);
+        context.stats().record(Stage.DECODE, time);
+        return new AudioInput(sampleRate, audioData.remaining(), factor,
+                (len, hop, padding) -> new ParallelWindower(audioData, len, hop, config.framesPerTask(), padding),
+                () -> {
+                    MemoryUtil.memFree(audioData);
+                    owned.close();
+                });
     }
 
     private static final int DEFAULT_EXPECTED_SIZE = 6 * 1024 * 1024;
 
-    private DoubleBuffer readAudioData(InputStream sf, AudioFormat sfinfo) throws IOException {
+    private DoubleBuffer readAudioData(SampleSource source, int expectedSize) throws IOException {
         System.err.println("Reading into data...");
         DoubleBuffer audioData = MemoryUtil.memAllocDouble(
-                Math.max(sf.available() / Short.SIZE, DEFAULT_EXPECTED_SIZE));
-        DataInputStream stream = new DataInputStream(sf);
+                Math.max(expectedSize, DEFAULT_EXPECTED_SIZE));
         while (true) {
-            try {
-                if (!audioData.hasRemaining()) {
-                    int startSize = audioData.capacity();
-                    int expandSize = expandFactor(startSize);
-                    System.err.print("Re-alloc from " + startSize + " to " + expandSize + "...");
-                    audioData = MemoryUtil.memRealloc(audioData, expandSize);
-                    System.err.println("done!");
-                    checkState(audioData != null, "failed to realloc for audio: original %s, expanded %s",
-                            startSize, expandSize);
-                }
-                if (sfinfo.getChannels() == 1) {
-                    // just directly read
-                    audioData.put(DOUBLE(stream.readShort()));
-                } else {
-                    // average l/r
-                    double l = DOUBLE(stream.readShort());
-                    double r = DOUBLE(stream.readShort());
-                    audioData.put((l + r) / 2);
-                }
-            } catch (EOFException end) {
+            if (!audioData.hasRemaining()) {
+                int startSize = audioData.capacity();
+                int expandSize = expandFactor(startSize);
+                System.err.print("Re-alloc from " + startSize + " to " + expandSize + "...");
+                audioData = MemoryUtil.memRealloc(audioData, expandSize);
+                System.err.println("done!");
+                checkState(audioData != null, "failed to realloc for audio: original %s, expanded %s",
+                        startSize, expandSize);
+            }
+            if (source.read(audioData) < 0) {
                 break;
             }
         }
@@ -259,14 +481,52 @@ public class Processor {
         return audioData;
     }
 
-    private static int expandFactor(int capacity) {
-        return capacity + (capacity >> 1);
-    }
+    private static final int READ_CHUNK = 16 * 1024;
 
-    private static final double DTS_FACTOR = Math.pow(2, Short.SIZE - 1);
+    /**
+     * {@link #readAudioData(SampleSource, int)}, rounding the samples to
+     * single precision as they arrive.
+     */
+    private FloatBuffer readFloatAudioData(SampleSource source, int expectedSize) throws IOException {
+        System.err.println("Reading into data...");
+        FloatBuffer audioData = MemoryUtil.memAllocFloat(
+                Math.max(expectedSize, DEFAULT_EXPECTED_SIZE));
+        double[] read = new double[READ_CHUNK];
+        float[] rounded = new float[READ_CHUNK];
+        DoubleBuffer chunk = DoubleBuffer.wrap(read);
+        while (true) {
+            if (!audioData.hasRemaining()) {
+                int startSize = audioData.capacity();
+                int expandSize = expandFactor(startSize);
+                System.err.print("Re-alloc from " + startSize + " to " + expandSize + "...");
+                audioData = MemoryUtil.memRealloc(audioData, expandSize);
+                System.err.println("done!");
+                checkState(audioData != null, "failed to realloc for audio: original %s, expanded %s",
+                        startSize, expandSize);
+            }
+            chunk.clear();
+            chunk.limit(Math.min(READ_CHUNK, audioData.remaining()));
+            int n = source.read(chunk);
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                rounded[i] = (float) read[i];
+            }
+            audioData.put(rounded, 0, n);
+        }
+        audioData.flip();
+        int startSize = audioData.capacity();
+        int endSize = audioData.remaining();
+        audioData = MemoryUtil.memRealloc(audioData, endSize);
+        checkState(audioData != null, "failed to realloc for audio: original %s, expanded %s",
+                startSize, endSize);
+        System.err.println(audioData);
+        return audioData;
+    }
 
-    private static double DOUBLE(short s) {
-        return s / DTS_FACTOR;
+    private static int expandFactor(int capacity) {
+        return capacity + (capacity >> 1);
     }
 
     private static String formatSeconds(double seconds) {
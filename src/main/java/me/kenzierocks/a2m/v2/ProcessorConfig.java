@@ -0,0 +1,197 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+@AutoValue
+public abstract class ProcessorConfig {
+
+    public static Builder builder() {
+        return new AutoValue_ProcessorConfig.Builder()
+                .streaming(false)
+                .mapWav(true)
+                .framesPerTask(0)
+                .window(StandardWindows.HANNING)
+                .planner(PlannerRigor.ESTIMATE)
+                .peakSearch(PeakSearch.HEAP)
+                .engine(Engine.FFT)
+                .decimate(false)
+                .singlePrecision(false)
+                .cutRatio(-5.0)
+                .relCutRatio(1.0)
+                .onThreshold(8)
+                .peakThreshold(128)
+                .shortNoteVelocities(ImmutableList.of(64, 28))
+                .stats(false);
+    }
+
+    public static ProcessorConfig defaults() {
+        return builder().build();
+    }
+
+    ProcessorConfig() {
+    }
+
+    /**
+     * If {@code true}, decoded audio is analyzed as it arrives through a
+     * fixed-size ring instead of being decoded fully up front.
+     */
+    public abstract boolean streaming();
+
+    /**
+     * If {@code true}, WAV files are memory-mapped and decoded directly by the
+     * workers, bypassing {@code javax.sound}. Only applies to file input.
+     */
+    public abstract boolean mapWav();
+
+    /**
+     * The number of consecutive frames each FFT task transforms with a single
+     * batched plan, or {@code 0} to pick automatically.
+     */
+    public abstract int framesPerTask();
+
+    public abstract Window window();
+
+    public abstract PlannerRigor planner();
+
+    /**
+     * FFTW wisdom imported before planning and updated afterwards, or
+     * {@code null} for none.
+     */
+    @Nullable
+    public abstract Path wisdomFile();
+
+    public abstract PeakSearch peakSearch();
+
+    public abstract Engine engine();
+
+    /**
+     * If {@code true}, audio is low-passed and decimated to the lowest rate
+     * that still covers the top note, and analyzed with frames shorter by
+     * the same factor. Mapped WAV files are then decoded in order.
+     */
+    public abstract boolean decimate();
+
+    /**
+     * If {@code true}, decoded audio, window tables and {@link Engine#FFT}'s
+     * transforms are single precision, using {@code fftwf}. Their wisdom is
+     * kept beside the wisdom file, see {@link FftwWisdom#path}.
+     */
+    public abstract boolean singlePrecision();
+
+    /**
+     * log10 of the power below which nothing is picked from a frame.
+     */
+    public abstract double cutRatio();
+
+    /**
+     * log10 of the cutoff relative to the average power of a frame. Ignored
+     * while {@link Extern#abs_flg} is set, as it is by default.
+     */
+    public abstract double relCutRatio();
+
+    /**
+     * The velocity a note must exceed to switch on.
+     */
+    public abstract int onThreshold();
+
+    /**
+     * How much louder a sounding note must get to be struck again,
+     * {@code 128} to never strike it again.
+     */
+    public abstract int peakThreshold();
+
+    /**
+     * Notes {@code i + 1} steps long are dropped unless louder than the
+     * {@code i}th velocity.
+     */
+    public abstract ImmutableList<Integer> shortNoteVelocities();
+
+    /**
+     * A file holding the corrected spectra of the input, or {@code null} for
+     * none. If it holds them for the same input and analysis, they are
+     * picked notes from again without decoding or transforming, otherwise
+     * they are stored into it. Only for file input, and engines with a
+     * {@link FrameAnalyzer}.
+     */
+    @Nullable
+    public abstract Path spectralCache();
+
+    /**
+     * If {@code true}, prints where the time went once converting is done.
+     */
+    public abstract boolean stats();
+
+    @AutoValue.Builder
+    public abstract static class Builder {
+
+        Builder() {
+        }
+
+        public abstract Builder streaming(boolean streaming);
+
+        public abstract Builder mapWav(boolean mapWav);
+
+        public abstract Builder framesPerTask(int framesPerTask);
+
+        public abstract Builder window(Window window);
+
+        public abstract Builder planner(PlannerRigor planner);
+
+        public abstract Builder wisdomFile(@Nullable Path wisdomFile);
+
+        public abstract Builder peakSearch(PeakSearch peakSearch);
+
+        public abstract Builder engine(Engine engine);
+
+        public abstract Builder decimate(boolean decimate);
+
+        public abstract Builder singlePrecision(boolean singlePrecision);
+
+        public abstract Builder cutRatio(double cutRatio);
+
+        public abstract Builder relCutRatio(double relCutRatio);
+
+        public abstract Builder onThreshold(int onThreshold);
+
+        public abstract Builder peakThreshold(int peakThreshold);
+
+        public abstract Builder shortNoteVelocities(Iterable<Integer> shortNoteVelocities);
+
+        public abstract Builder spectralCache(@Nullable Path spectralCache);
+
+        public abstract Builder stats(boolean stats);
+
+        public abstract ProcessorConfig build();
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Workers, FFT plans, the in-flight frame budget and stats, shared by every
+ * {@link Processor} run with it.
+ */
+public final class ProcessorContext implements AutoCloseable {
+
+    // tells the JMX names of contexts apart
+    private static final AtomicInteger CONTEXTS = new AtomicInteger();
+
+    private final ExecutorService workers = Executors.newWorkStealingPool();
+    private final ExecutorService submitters;
+    private final FftPlans plans;
+    private final int maxFramesInFlight;
+    private final Semaphore frameBudget;
+    private final PipelineStats stats = new PipelineStats();
+
+    /**
+     * @param frameBudget
+     *            the most frames windowed and not yet consumed, across every
+     *            input, or {@code 0} for no limit beyond each input's own
+     */
+    public ProcessorContext(PlannerRigor planner, int frameBudget) {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "submitter-thread-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.submitters = Executors.newCachedThreadPool(factory);
+        this.plans = new FftPlans(planner);
+        this.maxFramesInFlight = frameBudget > 0 ? frameBudget : Integer.MAX_VALUE;
+        this.frameBudget = new Semaphore(maxFramesInFlight);
+        stats.register(String.valueOf(CONTEXTS.incrementAndGet()));
+    }
+
+    /**
+     * Runs the windowing, transform and analysis tasks.
+     */
+    public ExecutorService workers() {
+        return workers;
+    }
+
+    /**
+     * Runs the threads that read the inputs and submit their tasks. These
+     * block, so they are kept out of {@link #workers()}.
+     */
+    public ExecutorService submitters() {
+        return submitters;
+    }
+
+    public FftPlans plans() {
+        return plans;
+    }
+
+    public Semaphore frameBudget() {
+        return frameBudget;
+    }
+
+    /**
+     * The permits {@link #frameBudget()} started with.
+     */
+    public int maxFramesInFlight() {
+        return maxFramesInFlight;
+    }
+
+    /**
+     * Where the time of every conversion using this context went. Published
+     * over JMX until the context is closed.
+     */
+    public PipelineStats stats() {
+        return stats;
+    }
+
+    /**
+     * Waits for the tasks still running, then frees the plans. If they do not
+     * finish within a minute, or the wait is interrupted, the plans are
+     * leaked rather than freed under a running task, and this throws.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        submitters.shutdown();
+        boolean terminated;
+        try {
+            terminated = workers.awaitTermination(1, TimeUnit.MINUTES)
+                    && submitters.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            terminated = false;
+        }
+        stats.unregister();
+        if (!terminated) {
+            throw new IllegalStateException("tasks still running, leaking " + plans.planCount() + " FFT plans");
+        }
+        plans.close();
+    }
+
+}
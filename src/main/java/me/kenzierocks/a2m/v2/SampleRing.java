@@ -0,0 +1,108 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Fixed-size ring of samples that hands out overlapping windows without
+ * copying.
+ * 
+ * <p>
+ * The first {@code len} slots are mirrored past the end of the ring, so a
+ * window starting anywhere in the ring is contiguous. Callers must make sure
+ * no window older than {@code capacity - len} samples behind the write head is
+ * still in use.
+ * </p>
+ */
+final class SampleRing implements AutoCloseable {
+
+    private final DoubleBuffer ring;
+    private final int capacity;
+    private final int len;
+    private long written;
+    private boolean eof;
+
+    SampleRing(int capacity, int len) {
+        if (capacity < len) {
+            throw new IllegalArgumentException("ring capacity " + capacity + " is smaller than window " + len);
+        }
+        this.ring = MemoryUtil.memAllocDouble(capacity + len);
+        this.capacity = capacity;
+        this.len = len;
+    }
+
+    long written() {
+        return written;
+    }
+
+    /**
+     * Reads from {@code source} until {@code total} samples have been written
+     * or the source is exhausted.
+     * 
+     * @return {@code true} if {@code total} samples are available
+     */
+    boolean fill(SampleSource source, long total) throws IOException {
+        while (!eof && written < total) {
+            int start = (int) (written % capacity);
+            int count = (int) Math.min(total - written, capacity - start);
+            ring.limit(start + count).position(start);
+            int read = source.read(ring);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            if (start < len) {
+                // mirror the head past the end
+                ring.limit(ring.capacity());
+                int end = Math.min(start + read, len);
+                for (int i = start; i < end; i++) {
+                    ring.put(capacity + i, ring.get(i));
+                }
+            }
+            written += read;
+        }
+        return written >= total;
+    }
+
+    /**
+     * Slices out the window of {@code len} samples starting at absolute sample
+     * {@code start}.
+     */
+    DoubleBuffer window(long start) {
+        int pos = (int) (start % capacity);
+        ring.limit(pos + len).position(pos);
+        return ring.slice();
+    }
+
+    @Override
+    public void close() {
+        MemoryUtil.memFree(ring);
+    }
+
+}
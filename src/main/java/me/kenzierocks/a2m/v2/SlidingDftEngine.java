@@ -0,0 +1,288 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+
+/**
+ * The analysis of {@link FftEngine}, with the spectrum of each frame slid
+ * along from the one before instead of transformed again. Only the bins of
+ * the {@link FrameAnalyzer} band are kept.
+ * 
+ * <p>
+ * Sliding works on the spectrum of the samples as they are, so the window is
+ * applied afterwards, as a convolution with its own spectrum. Only the taps
+ * of that spectrum above {@link #SPARSITY} of the centre one are used, which
+ * for the standard windows is a handful. Each block starts from a full FFT,
+ * so rounding errors never build up over more than one block.
+ * </p>
+ */
+final class SlidingDftEngine implements AnalysisEngine {
+
+    // window spectrum taps weaker than this, relative to the centre, are
+    // dropped
+    private static final double SPARSITY = 1e-4;
+    private static final int MAX_TAPS = 64;
+
+    private final int len;
+    private final int hop;
+    private final double den;
+    private final FrameAnalyzer analyzer;
+    private final FftPlans plans;
+    private final PipelineStats stats;
+    // the window spectrum from -taps to +taps, divided by len
+    private final int taps;
+    private final double[] tapRe;
+    private final double[] tapIm;
+    // the bins slid along, lo to hi, with their Goertzel coefficient and
+    // rotations per sample and per hop
+    private final int lo;
+    private final int hi;
+    private final double[] coeff;
+    private final double[] rotRe;
+    private final double[] rotIm;
+    private final double[] hopRe;
+    private final double[] hopIm;
+
+    SlidingDftEngine(Window window, int len, int hop, FrameAnalyzer analyzer, FftPlans plans,
+            PipelineStats stats) {
+        checkArgument(Integer.bitCount(len) == 1, "length must be a power of two: %s", len);
+        this.len = len;
+        this.hop = hop;
+        this.den = window.init_den(len);
+        this.analyzer = analyzer;
+        this.plans = plans;
+        this.stats = stats;
+
+        // the DFT of the window, which multiplying in time convolves by
+        double[] w = window.coefficients(len);
+        double[] re = new double[MAX_TAPS + 1];
+        double[] im = new double[MAX_TAPS + 1];
+        int taps = 0;
+        for (int j = 0; j <= MAX_TAPS; j++) {
+            for (int i = 0; i < len; i++) {
+                double angle = 2.0 * Math.PI * (((long) i * j) % len) / len;
+                re[j] += w[i] * Math.cos(angle);
+                im[j] -= w[i] * Math.sin(angle);
+            }
+            if (Math.hypot(re[j], im[j]) >= SPARSITY * Math.abs(re[0])) {
+                taps = j;
+            }
+        }
+        // the window is real, so the taps below zero are the conjugates
+        this.taps = taps;
+        this.tapRe = new double[2 * taps + 1];
+        this.tapIm = new double[2 * taps + 1];
+        for (int j = 0; j <= taps; j++) {
+            tapRe[taps + j] = re[j] / len;
+            tapIm[taps + j] = im[j] / len;
+            tapRe[taps - j] = re[j] / len;
+            tapIm[taps - j] = -im[j] / len;
+        }
+
+        this.lo = analyzer.bandFrom() - taps;
+        this.hi = analyzer.bandTo() + taps;
+        this.coeff = new double[hi - lo];
+        this.rotRe = new double[hi - lo];
+        this.rotIm = new double[hi - lo];
+        this.hopRe = new double[hi - lo];
+        this.hopIm = new double[hi - lo];
+        for (int k = lo; k < hi; k++) {
+            double omega = 2.0 * Math.PI * k / len;
+            coeff[k - lo] = 2.0 * Math.cos(omega);
+            rotRe[k - lo] = Math.cos(omega);
+            rotIm[k - lo] = Math.sin(omega);
+            double angle = 2.0 * Math.PI * (((long) k * hop) % len) / len;
+            hopRe[k - lo] = Math.cos(angle);
+            hopIm[k - lo] = Math.sin(angle);
+        }
+    }
+
+    /**
+     * The number of window spectrum taps on each side of the centre.
+     */
+    int taps() {
+        return taps;
+    }
+
+    @Override
+    public int len() {
+        return len;
+    }
+
+    @Override
+    public FrameAnalyzer analyzer() {
+        return analyzer;
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) throws Exception {
+        analyze(previous, frames, count, vel, null);
+    }
+
+    @Override
+    public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel, float[][] spectra)
+            throws Exception {
+        double[][] arrays = WindowHelper.getAnalysisArrays(10, Math.max(len, len / 2 + 1));
+        double[] p = arrays[0];
+        double[] ph1 = arrays[1];
+        double[] ph0 = arrays[2];
+        double[] dphi = arrays[3];
+        double[] xr = arrays[4];
+        double[] xi = arrays[5];
+        double[] samples = arrays[6];
+        double[] next = arrays[7];
+        double[] s1 = arrays[8];
+        double[] s2 = arrays[9];
+
+        long time = System.nanoTime();
+        Frame first = previous != null ? previous : frames[0];
+        first.read(samples, len);
+        time = stats.record(Stage.WINDOW, time);
+        try (FftPlans.Lease plan = plans.lease(len, 1)) {
+            plan.input().put(samples, 0, len);
+            plan.execute();
+            load(plan.output(), xr, xi);
+        }
+        time = stats.record(Stage.FFT, time);
+        polar(xr, xi, p, previous != null ? ph0 : ph1);
+        time = stats.record(Stage.POLAR, time);
+
+        for (int f = 0; f < count; f++) {
+            if (previous != null || f > 0) {
+                frames[f].read(next, len);
+                time = stats.record(Stage.WINDOW, time);
+                slide(samples, next, xr, xi, s1, s2);
+                time = stats.record(Stage.BANK, time);
+                polar(xr, xi, p, ph1);
+                time = stats.record(Stage.POLAR, time);
+
+                double[] swap = samples;
+                samples = next;
+                next = swap;
+            }
+            analyzer.correct(p, ph1, previous != null || f > 0 ? ph0 : null, dphi);
+            if (spectra != null) {
+                analyzer.store(p, dphi, spectra[f]);
+            }
+            time = stats.record(Stage.PHASE, time);
+            analyzer.search(p, dphi, vel[f]);
+            time = stats.record(Stage.PEAKS, time);
+
+            double[] swap = ph0;
+            ph0 = ph1;
+            ph1 = swap;
+        }
+    }
+
+    /**
+     * Loads the bins from {@link #lo} to {@link #hi} of a halfcomplex
+     * spectrum, using the symmetry of real input for those outside it.
+     */
+    private void load(DoubleBuffer spectrum, double[] xr, double[] xi) {
+        int half = len / 2;
+        for (int k = lo; k < hi; k++) {
+            int b = Math.floorMod(k, len);
+            boolean conjugate = b > half;
+            if (conjugate) {
+                b = len - b;
+            }
+            double re = spectrum.get(b);
+            double im = b == 0 || b == half ? 0.0 : spectrum.get(len - b);
+            xr[k - lo] = re;
+            xi[k - lo] = conjugate ? -im : im;
+        }
+    }
+
+    /**
+     * Slides the spectrum of {@code from} along to that of {@code to}, one
+     * hop later.
+     * 
+     * <p>
+     * Sliding a sample at a time is {@code X = (X + d) * e^(i w)}, with
+     * {@code d} the sample entering less the one leaving. Over a hop, that is
+     * {@code X} rotated by the hop plus the sum of each {@code d} rotated by
+     * what is left of it, which a Goertzel resonator runs in one real multiply
+     * per sample.
+     * </p>
+     */
+    private void slide(double[] from, double[] to, double[] xr, double[] xi, double[] s1, double[] s2) {
+        int bins = hi - lo;
+        double[] c = coeff;
+        Arrays.fill(s1, 0, bins, 0.0);
+        Arrays.fill(s2, 0, bins, 0.0);
+        for (int m = 0; m < hop; m++) {
+            double d = to[len - hop + m] - from[m];
+            for (int b = 0; b < bins; b++) {
+                double s0 = d + c[b] * s1[b] - s2[b];
+                s2[b] = s1[b];
+                s1[b] = s0;
+            }
+        }
+        for (int b = 0; b < bins; b++) {
+            double r = xr[b] * hopRe[b] - xi[b] * hopIm[b];
+            double i = xr[b] * hopIm[b] + xi[b] * hopRe[b];
+            // the resonator's sum, rotated on by a sample
+            xr[b] = r + s1[b] * rotRe[b] - s2[b];
+            xi[b] = i + s1[b] * rotIm[b];
+        }
+    }
+
+    /**
+     * Windows the spectrum and converts the band to power and phase, the
+     * same as {@link HC#to_polar2} does for {@link FftEngine}.
+     */
+    private void polar(double[] xr, double[] xi, double[] amp2, double[] phs) {
+        int width = 2 * taps + 1;
+        for (int k = analyzer.bandFrom(); k < analyzer.bandTo(); k++) {
+            // sum over j of tap[j] * x[k - j]
+            double re = 0.0;
+            double im = 0.0;
+            int b = k - lo + taps;
+            for (int t = 0; t < width; t++) {
+                double ar = tapRe[t];
+                double ai = tapIm[t];
+                double br = xr[b - t];
+                double bi = xi[b - t];
+                re += ar * br - ai * bi;
+                im += ar * bi + ai * br;
+            }
+            amp2[k] = (re * re + im * im) / den;
+            if (k == 0 || k == len / 2) {
+                // real, so like to_polar2 the phase is taken as zero
+                phs[k] = 0.0;
+            } else {
+                phs[k] = amp2[k] > 0.0 ? FastTrig.fast_atan2(im, re) : 0.0;
+            }
+        }
+    }
+
+}
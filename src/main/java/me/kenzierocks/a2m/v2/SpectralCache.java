@@ -0,0 +1,384 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Corrected spectra kept from a conversion, so notes can be picked from them
+ * again with other thresholds, without decoding or transforming the input.
+ * 
+ * <p>
+ * A file holds the band {@link FrameAnalyzer#store} keeps of every frame, as
+ * little-endian floats, after a header with the {@link Key} of the input and
+ * analysis they came from. It is memory-mapped to be read.
+ * </p>
+ */
+public final class SpectralCache {
+
+    /**
+     * What the spectra depend on.
+     */
+    @AutoValue
+    public abstract static class Key {
+
+        public static Key of(HashCode input, int len, int hop, Window window, Engine engine, boolean decimate,
+                boolean singlePrecision, int notelow, int notetop) {
+            checkArgument(input.bits() == HASH_BYTES * Byte.SIZE, "not a %s-byte hash: %s", HASH_BYTES, input);
+            return new AutoValue_SpectralCache_Key(input, len, hop, window.toString(), engine.name(), decimate,
+                    singlePrecision, notelow, notetop);
+        }
+
+        Key() {
+        }
+
+        /**
+         * The {@link SpectralCache#hash hash} of the input file.
+         */
+        public abstract HashCode input();
+
+        /**
+         * The frame length asked for, before any decimation.
+         */
+        public abstract int len();
+
+        public abstract int hop();
+
+        public abstract String window();
+
+        public abstract String engine();
+
+        public abstract boolean decimate();
+
+        public abstract boolean singlePrecision();
+
+        public abstract int notelow();
+
+        public abstract int notetop();
+
+        private void write(ByteBuffer header) {
+            header.put(input().asBytes());
+            header.putInt(len());
+            header.putInt(hop());
+            header.putInt(decimate() ? 1 : 0);
+            header.putInt(singlePrecision() ? 1 : 0);
+            header.putInt(notelow());
+            header.putInt(notetop());
+            writeName(header, window());
+            writeName(header, engine());
+        }
+
+        private static Key read(ByteBuffer header) {
+            byte[] input = new byte[HASH_BYTES];
+            header.get(input);
+            int len = header.getInt();
+            int hop = header.getInt();
+            boolean decimate = header.getInt() != 0;
+            boolean singlePrecision = header.getInt() != 0;
+            int notelow = header.getInt();
+            int notetop = header.getInt();
+            String window = readName(header);
+            String engine = window != null ? readName(header) : null;
+            if (engine == null) {
+                return null;
+            }
+            return new AutoValue_SpectralCache_Key(HashCode.fromBytes(input), len, hop, window, engine, decimate,
+                    singlePrecision, notelow, notetop);
+        }
+
+        private static void writeName(ByteBuffer header, String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            checkArgument(bytes.length <= MAX_NAME_BYTES, "name too long: %s", name);
+            header.putShort((short) bytes.length);
+            header.put(bytes);
+        }
+
+        private static String readName(ByteBuffer header) {
+            int length = header.getShort();
+            if (length < 0 || length > MAX_NAME_BYTES) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            header.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+    }
+
+    private static final int MAGIC = 0x534D3241; // "A2MS"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 256;
+    private static final int FRAMES_OFFSET = 8;
+    private static final int KEY_OFFSET = 32;
+    private static final int HASH_BYTES = 32;
+    // for each of the window and engine names
+    private static final int MAX_NAME_BYTES = (HEADER_BYTES - KEY_OFFSET - HASH_BYTES - 6 * Integer.BYTES) / 2
+            - Short.BYTES;
+
+    /**
+     * Hashes the contents of {@code input}, to key its spectra.
+     */
+    public static HashCode hash(Path input) throws IOException {
+        return com.google.common.io.Files.asByteSource(input.toFile()).hash(Hashing.sha256());
+    }
+
+    /**
+     * Opens the spectra in {@code file}, if it holds them for {@code key}.
+     * 
+     * @return the spectra, or {@code null} if the file is missing, was not
+     *         written to the end, or holds the spectra of another input or
+     *         analysis
+     */
+    public static SpectralCache open(Path file, Key key) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return null;
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int frames = header.getInt();
+            float sampleRate = header.getFloat();
+            int len = header.getInt();
+            int hop = header.getInt();
+            int bandFrom = header.getInt();
+            int bandTo = header.getInt();
+            header.position(KEY_OFFSET);
+            if (!key.equals(Key.read(header))) {
+                return null;
+            }
+            int spectrumLength = 2 * (bandTo - bandFrom);
+            if (size != HEADER_BYTES + (long) frames * spectrumLength * Float.BYTES) {
+                return null;
+            }
+            FloatBuffer data = channel.map(MapMode.READ_ONLY, HEADER_BYTES, size - HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            return new SpectralCache(data, frames, sampleRate, len, hop, bandFrom, bandTo);
+        }
+    }
+
+    /**
+     * Writes spectra into a file, which only replaces the one there once
+     * {@link #commit() committed}.
+     */
+    public static final class Writer implements AutoCloseable {
+
+        // a single mapping is at most 2 GiB
+        private static final long MAX_BYTES = Integer.MAX_VALUE;
+        private static final int BUFFER_BYTES = 1024 * 1024;
+
+        private final Path file;
+        private final Path temp;
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer buffer;
+        private final int spectrumLength;
+        private int frames;
+        private boolean full;
+        private boolean committed;
+
+        /**
+         * Starts writing spectra analyzed with frames of {@code len} samples,
+         * {@code hop} apart, at {@code sampleRate}, each holding the band
+         * from {@code bandFrom} to {@code bandTo}.
+         */
+        public Writer(Path file, Key key, float sampleRate, int len, int hop, int bandFrom, int bandTo)
+                throws IOException {
+            this.file = file;
+            this.spectrumLength = 2 * (bandTo - bandFrom);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(0);
+            header.putFloat(sampleRate);
+            header.putInt(len);
+            header.putInt(hop);
+            header.putInt(bandFrom);
+            header.putInt(bandTo);
+            header.position(KEY_OFFSET);
+            key.write(header);
+            header.clear();
+            this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, spectrumLength * Float.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            Path dir = file.toAbsolutePath().getParent();
+            this.temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                this.channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            channel.position(HEADER_BYTES);
+        }
+
+        /**
+         * Appends the spectrum of the next frame.
+         */
+        public void write(float[] spectrum) throws IOException {
+            checkArgument(spectrum.length == spectrumLength, "spectrum of %s floats, expected %s",
+                    spectrum.length, spectrumLength);
+            int bytes = spectrumLength * Float.BYTES;
+            if (full || HEADER_BYTES + (frames + 1L) * bytes > MAX_BYTES) {
+                full = true;
+                return;
+            }
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            buffer.asFloatBuffer().put(spectrum);
+            buffer.position(buffer.position() + bytes);
+            frames++;
+        }
+
+        /**
+         * Replaces the file with the spectra written, unless there were too
+         * many to map.
+         * 
+         * @return {@code true} if the file was replaced
+         */
+        public boolean commit() throws IOException {
+            if (full) {
+                return false;
+            }
+            flush();
+            header.putInt(FRAMES_OFFSET, frames);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return true;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+    }
+
+    private final FloatBuffer data;
+    private final int frames;
+    private final float sampleRate;
+    private final int len;
+    private final int hop;
+    private final int bandFrom;
+    private final int bandTo;
+
+    private SpectralCache(FloatBuffer data, int frames, float sampleRate, int len, int hop, int bandFrom,
+            int bandTo) {
+        this.data = data;
+        this.frames = frames;
+        this.sampleRate = sampleRate;
+        this.len = len;
+        this.hop = hop;
+        this.bandFrom = bandFrom;
+        this.bandTo = bandTo;
+    }
+
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * The rate analyzed, after any decimation.
+     */
+    public float sampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * The frame length analyzed, after any decimation.
+     */
+    public int len() {
+        return len;
+    }
+
+    /**
+     * The hop analyzed, after any decimation.
+     */
+    public int hop() {
+        return hop;
+    }
+
+    public int bandFrom() {
+        return bandFrom;
+    }
+
+    public int bandTo() {
+        return bandTo;
+    }
+
+    /**
+     * Reads the spectrum of {@code frame} into {@code spectrum}. Not
+     * thread-safe.
+     */
+    public void read(int frame, float[] spectrum) {
+        int spectrumLength = 2 * (bandTo - bandFrom);
+        checkArgument(spectrum.length == spectrumLength, "spectrum of %s floats, expected %s", spectrum.length,
+                spectrumLength);
+        data.position(frame * spectrumLength);
+        data.get(spectrum);
+    }
+
+}
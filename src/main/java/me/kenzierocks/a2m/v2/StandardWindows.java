@@ -39,6 +39,47 @@ public enum StandardWindows implements Window {
             return (0.54 - 0.46 * Math.cos(2.0 * Math.PI * (double) i / (double) (nn - 1)));
         }
 
+    },
+    /**
+     * 4-term Blackman-Harris, ~92 dB side-lobe rejection.
+     */
+    BLACKMAN_HARRIS {
+
+        @Override
+        public double apply(int i, int nn) {
+            double x = 2.0 * Math.PI * (double) i / (double) (nn - 1);
+            return 0.35875 - 0.48829 * Math.cos(x) + 0.14128 * Math.cos(2 * x) - 0.01168 * Math.cos(3 * x);
+        }
+
+    },
+    /**
+     * Kaiser with beta = 8.6, similar in shape to Blackman.
+     */
+    KAISER {
+
+        private static final double BETA = 8.6;
+
+        @Override
+        public double apply(int i, int nn) {
+            double r = 2.0 * (double) i / (double) (nn - 1) - 1.0;
+            return bessel_i0(BETA * Math.sqrt(1.0 - r * r)) / bessel_i0(BETA);
+        }
+
     };
 
+    /**
+     * Zeroth-order modified Bessel function of the first kind, by its power
+     * series.
+     */
+    private static double bessel_i0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double q = x * x / 4.0;
+        for (int k = 1; term > sum * 1e-17; k++) {
+            term *= q / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
+
 }
@@ -0,0 +1,288 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A WAV file whose data chunk is memory-mapped and decoded on demand.
+ * 
+ * <p>
+ * Supports mono and stereo little-endian 16/24-bit PCM and 32-bit float.
+ * Reads use absolute indexing only, so any number of threads may read
+ * concurrently.
+ * </p>
+ */
+public final class WavFile implements Closeable {
+
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private enum Encoding {
+        PCM_16, PCM_24, FLOAT_32
+    }
+
+    /**
+     * Opens {@code path} if it is a WAV file this reader can map.
+     * 
+     * @return the mapped file, or {@code null} if the file is not a supported
+     *         WAV file
+     */
+    public static WavFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            WavFile wav = parse(channel);
+            if (wav == null) {
+                channel.close();
+            }
+            return wav;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static WavFile parse(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(channel, header, 0, 12)
+                || header.getInt(0) != chunkId("RIFF")
+                || header.getInt(8) != chunkId("WAVE")) {
+            return null;
+        }
+        int format = -1;
+        int channels = 0;
+        float sampleRate = 0;
+        int blockAlign = 0;
+        int bits = 0;
+        long pos = 12;
+        while (readFully(channel, header, pos, 8)) {
+            int id = header.getInt(0);
+            long size = header.getInt(4) & 0xFFFFFFFFL;
+            long body = pos + 8;
+            if (id == chunkId("fmt ")) {
+                if (size < 16 || !readFully(channel, header, body, (int) Math.min(size, 40))) {
+                    return null;
+                }
+                format = header.getShort(0) & 0xFFFF;
+                channels = header.getShort(2) & 0xFFFF;
+                sampleRate = header.getInt(4) & 0xFFFFFFFFL;
+                blockAlign = header.getShort(12) & 0xFFFF;
+                bits = header.getShort(14) & 0xFFFF;
+                if (format == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+                    // first two bytes of the sub-format GUID are the format tag
+                    format = header.getShort(24) & 0xFFFF;
+                }
+            } else if (id == chunkId("data")) {
+                if (format == -1) {
+                    return null;
+                }
+                if (size == 0 || size == 0xFFFFFFFFL || body + size > fileSize) {
+                    // unfinished or streamed files
+                    size = fileSize - body;
+                }
+                Encoding encoding = encoding(format, bits);
+                if (encoding == null || (channels != 1 && channels != 2)
+                        || blockAlign != channels * bits / 8) {
+                    return null;
+                }
+                size -= size % blockAlign;
+                if (size > Integer.MAX_VALUE) {
+                    // too big for a single mapping
+                    return null;
+                }
+                MappedByteBuffer data = channel.map(MapMode.READ_ONLY, body, size);
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                return new WavFile(channel, data, encoding, channels, sampleRate, blockAlign);
+            }
+            // chunks are word-aligned
+            pos = body + size + (size & 1);
+        }
+        return null;
+    }
+
+    private static Encoding encoding(int format, int bits) {
+        if (format == WAVE_FORMAT_PCM) {
+            if (bits == 16) {
+                return Encoding.PCM_16;
+            }
+            if (bits == 24) {
+                return Encoding.PCM_24;
+            }
+        } else if (format == WAVE_FORMAT_IEEE_FLOAT && bits == 32) {
+            return Encoding.FLOAT_32;
+        }
+        return null;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buf, long pos, int len) throws IOException {
+        buf.clear().limit(len);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int chunkId(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+
+    private static final int BLOCK_FRAMES = 16 * 1024;
+    private static final double PCM_16_FACTOR = 1 << 15;
+    private static final double PCM_24_FACTOR = 1 << 23;
+
+    private final FileChannel channel;
+    private final ByteBuffer data;
+    private final Encoding encoding;
+    private final int channels;
+    private final float sampleRate;
+    private final int frameSize;
+
+    private WavFile(FileChannel channel, ByteBuffer data, Encoding encoding, int channels, float sampleRate,
+            int frameSize) {
+        this.channel = channel;
+        this.data = data;
+        this.encoding = encoding;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.frameSize = frameSize;
+    }
+
+    public float sampleRate() {
+        return sampleRate;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    /**
+     * @return the number of (mono) samples in the file
+     */
+    public int frames() {
+        return data.capacity() / frameSize;
+    }
+
+    /**
+     * Decodes {@code len} samples starting at {@code frame} into {@code dst},
+     * averaging stereo down to mono.
+     */
+    public void read(int frame, double[] dst, int len) {
+        ByteBuffer b = data;
+        int j = frame * frameSize;
+        switch (encoding) {
+            case PCM_16:
+                if (channels == 1) {
+                    for (int i = 0; i < len; i++, j += 2) {
+                        dst[i] = b.getShort(j) / PCM_16_FACTOR;
+                    }
+                } else {
+                    for (int i = 0; i < len; i++, j += 4) {
+                        double l = b.getShort(j) / PCM_16_FACTOR;
+                        double r = b.getShort(j + 2) / PCM_16_FACTOR;
+                        dst[i] = (l + r) / 2;
+                    }
+                }
+                break;
+            case PCM_24:
+                if (channels == 1) {
+                    for (int i = 0; i < len; i++, j += 3) {
+                        dst[i] = int24(b, j) / PCM_24_FACTOR;
+                    }
+                } else {
+                    for (int i = 0; i < len; i++, j += 6) {
+                        double l = int24(b, j) / PCM_24_FACTOR;
+                        double r = int24(b, j + 3) / PCM_24_FACTOR;
+                        dst[i] = (l + r) / 2;
+                    }
+                }
+                break;
+            case FLOAT_32:
+                if (channels == 1) {
+                    for (int i = 0; i < len; i++, j += 4) {
+                        dst[i] = b.getFloat(j);
+                    }
+                } else {
+                    for (int i = 0; i < len; i++, j += 8) {
+                        double l = b.getFloat(j);
+                        double r = b.getFloat(j + 4);
+                        dst[i] = (l + r) / 2;
+                    }
+                }
+                break;
+            default:
+                throw new AssertionError(encoding);
+        }
+    }
+
+    /**
+     * Decodes the file from the start, for when the samples must be read in
+     * order.
+     */
+    public SampleSource source() {
+        return new SampleSource() {
+
+            private final double[] block = new double[BLOCK_FRAMES];
+            private int next;
+
+            @Override
+            public int read(DoubleBuffer dst) {
+                int n = Math.min(Math.min(dst.remaining(), BLOCK_FRAMES), frames() - next);
+                if (n <= 0) {
+                    return dst.hasRemaining() ? -1 : 0;
+                }
+                WavFile.this.read(next, block, n);
+                dst.put(block, 0, n);
+                next += n;
+                return n;
+            }
+
+        };
+    }
+
+    private static int int24(ByteBuffer b, int j) {
+        // sign-extend from the high byte
+        return (b.get(j) & 0xFF) | (b.get(j + 1) & 0xFF) << 8 | b.get(j + 2) << 16;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping itself is released when it is collected
+        channel.close();
+    }
+
+}
@@ -25,15 +25,33 @@
 package me.kenzierocks.a2m.v2;
 
 import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 
 public interface Window {
 
     double apply(int i, int nn);
 
+    /**
+     * Gets the coefficients for a window of {@code len} samples. They are
+     * computed once per length and shared, so the returned array must not be
+     * modified.
+     */
+    default double[] coefficients(int len) {
+        return WindowTables.get(this, len);
+    }
+
+    /**
+     * The {@link #coefficients(int)} in single precision, shared the same way.
+     */
+    default float[] floatCoefficients(int len) {
+        return WindowTables.getFloat(this, len);
+    }
+
     default double init_den(int len) {
+        double[] table = coefficients(len);
         double den = 0;
         for (int i = 0; i < len; i++) {
-            double apply = apply(i, len);
+            double apply = table[i];
             den += apply * apply;
         }
 
@@ -43,11 +61,33 @@ public interface Window {
     default void windowing(int len, DoubleBuffer data, double scale, DoubleBuffer out) {
         // apply window in java land to avoid expensive calls
         double[] cache = WindowHelper.getWindowingArray(len);
-        data.get(cache);
+        data.get(cache, 0, len);
+        windowing(len, cache, scale, out);
+    }
+
+    /**
+     * Windows the first {@code len} samples of {@code data} in place, then
+     * writes them to {@code out}.
+     */
+    default void windowing(int len, double[] data, double scale, DoubleBuffer out) {
+        double[] table = coefficients(len);
+        for (int i = 0; i < len; i++) {
+            data[i] = data[i] * table[i] / scale;
+        }
+        out.put(data, 0, len);
+    }
+
+    /**
+     * Windows the first {@code len} samples of {@code data} into {@code out},
+     * in single precision.
+     */
+    default void windowing(int len, double[] data, FloatBuffer out) {
+        float[] table = floatCoefficients(len);
+        float[] windowed = WindowHelper.getFloatWindowingArray(len);
         for (int i = 0; i < len; i++) {
-            cache[i] = cache[i] * apply(i, len) / scale;
+            windowed[i] = (float) data[i] * table[i];
         }
-        out.put(cache);
+        out.put(windowed, 0, len);
     }
 
 }
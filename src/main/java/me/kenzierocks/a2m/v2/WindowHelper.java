@@ -13,4 +13,30 @@ class WindowHelper {
         return array;
     }
 
+    private static final ThreadLocal<float[]> FLOAT_WINDOWING_CACHE = new ThreadLocal<>();
+
+    public static float[] getFloatWindowingArray(int len) {
+        float[] array = FLOAT_WINDOWING_CACHE.get();
+        if (array == null || array.length < len) {
+            array = new float[len];
+            FLOAT_WINDOWING_CACHE.set(array);
+        }
+        return array;
+    }
+
+    private static final ThreadLocal<double[][]> ANALYSIS_CACHE = new ThreadLocal<>();
+
+    /**
+     * Returns {@code count} arrays of at least {@code bins} entries, for
+     * spectra being analyzed on this thread.
+     */
+    public static double[][] getAnalysisArrays(int count, int bins) {
+        double[][] arrays = ANALYSIS_CACHE.get();
+        if (arrays == null || arrays.length < count || arrays[0].length < bins) {
+            arrays = new double[count][bins];
+            ANALYSIS_CACHE.set(arrays);
+        }
+        return arrays;
+    }
+
 }
@@ -0,0 +1,90 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Shared cache of materialized window coefficients, one table per window and
+ * length.
+ */
+final class WindowTables {
+
+    @AutoValue
+    abstract static class Key {
+
+        static Key of(Window window, int len) {
+            return new AutoValue_WindowTables_Key(window, len);
+        }
+
+        Key() {
+        }
+
+        abstract Window window();
+
+        abstract int len();
+
+    }
+
+    private static final ConcurrentMap<Key, double[]> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the coefficients of {@code window} for {@code len} samples. The
+     * returned array is shared and must not be modified.
+     */
+    static double[] get(Window window, int len) {
+        return TABLES.computeIfAbsent(Key.of(window, len), k -> {
+            double[] table = new double[len];
+            for (int i = 0; i < len; i++) {
+                table[i] = window.apply(i, len);
+            }
+            return table;
+        });
+    }
+
+    private static final ConcurrentMap<Key, float[]> FLOAT_TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the coefficients of {@link #get(Window, int)}, rounded to single
+     * precision. The returned array is shared and must not be modified.
+     */
+    static float[] getFloat(Window window, int len) {
+        return FLOAT_TABLES.computeIfAbsent(Key.of(window, len), k -> {
+            double[] table = get(window, len);
+            float[] rounded = new float[len];
+            for (int i = 0; i < len; i++) {
+                rounded[i] = (float) table[i];
+            }
+            return rounded;
+        });
+    }
+
+    private WindowTables() {
+    }
+
+}
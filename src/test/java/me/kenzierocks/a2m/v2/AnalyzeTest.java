@@ -0,0 +1,124 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+public class AnalyzeTest {
+
+    private final boolean abs_flg = Extern.abs_flg;
+
+    @After
+    public void restoreFlags() {
+        Extern.abs_flg = abs_flg;
+    }
+
+    @Test
+    public void heapMatchesScanAbsolute() throws Exception {
+        Extern.abs_flg = true;
+        compareOnRandomSpectra(new Random(1), -5.0);
+    }
+
+    @Test
+    public void heapMatchesScanRelative() throws Exception {
+        Extern.abs_flg = false;
+        compareOnRandomSpectra(new Random(2), -5.0);
+    }
+
+    @Test
+    public void ignoresBinsOutsideBand() throws Exception {
+        // the frame analyzer only converts bins i0 - 1 to i1
+        Random random = new Random(3);
+        int len = 4096;
+        double t0 = len / 44100.0;
+        int bins = len / 2 + 1;
+        for (boolean abs : new boolean[] { true, false }) {
+            Extern.abs_flg = abs;
+            for (int trial = 0; trial < 500; trial++) {
+                double[] p = new double[bins];
+                double[] fp = new double[bins];
+                int levels = 1 + random.nextInt(12);
+                for (int i = 0; i < bins; i++) {
+                    p[i] = random.nextInt(4) == 0 ? 0.0 : Math.pow(10.0, -6 + random.nextInt(levels) * 0.5);
+                    fp[i] = i / t0;
+                }
+                int i0 = 1 + random.nextInt(40);
+                int i1 = Math.min(len / 2 - 1, i0 + 1 + random.nextInt(800));
+                double[] other = p.clone();
+                for (int i = 0; i < bins; i++) {
+                    if (i < i0 || i >= i1) {
+                        other[i] = random.nextBoolean() ? 0.0 : random.nextDouble();
+                    }
+                }
+
+                for (PeakSearch search : PeakSearch.values()) {
+                    double[] pa = p.clone();
+                    double[] pb = other.clone();
+                    byte[] a = new byte[128];
+                    byte[] b = new byte[128];
+                    search.note_intensity(pa, fp, -5.0, 1.0, i0, i1, t0, a, MidiFreqRelations::get_note);
+                    search.note_intensity(pb, fp, -5.0, 1.0, i0, i1, t0, b, MidiFreqRelations::get_note);
+                    assertArrayEquals(search + ", trial " + trial, a, b);
+                }
+            }
+        }
+    }
+
+    private static void compareOnRandomSpectra(Random random, double cut_ratio) {
+        int len = 4096;
+        double t0 = len / 44100.0;
+        for (int trial = 0; trial < 2000; trial++) {
+            int bins = len / 2 + 1;
+            double[] p = new double[bins];
+            double[] fp = new double[bins];
+            // few distinct levels, so that there are plenty of ties and plateaus
+            int levels = 1 + random.nextInt(12);
+            for (int i = 0; i < bins; i++) {
+                p[i] = random.nextInt(4) == 0 ? 0.0 : Math.pow(10.0, -6 + random.nextInt(levels) * 0.5);
+                fp[i] = i / t0 * (1 + (random.nextDouble() - 0.5) * 0.01);
+            }
+            int i0 = 1 + random.nextInt(40);
+            int i1 = Math.min(len / 2 - 1, i0 + 1 + random.nextInt(800));
+
+            double[] pScan = p.clone();
+            double[] pHeap = p.clone();
+            byte[] scan = new byte[128];
+            byte[] heap = new byte[128];
+            Analyze.note_intensity(pScan, fp, cut_ratio, 1.0, i0, i1, t0, scan);
+            Analyze.note_intensity_heap(pHeap, fp, cut_ratio, 1.0, i0, i1, t0, heap, MidiFreqRelations::get_note);
+
+            assertArrayEquals("velocities, trial " + trial, scan, heap);
+            assertArrayEquals("spectrum, trial " + trial, pScan, pHeap, 0.0);
+        }
+    }
+
+}
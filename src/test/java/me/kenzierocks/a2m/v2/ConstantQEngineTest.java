@@ -0,0 +1,96 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+public class ConstantQEngineTest {
+
+    private static final float SAMPLE_RATE = 44100;
+
+    @Test
+    public void framesResolveTheLowestNote() throws Exception {
+        try (FftPlans plans = new FftPlans(PlannerRigor.ESTIMATE)) {
+            ConstantQEngine engine = new ConstantQEngine(StandardWindows.HANNING, 4096, SAMPLE_RATE, -5.0, 1.0,
+                    28, 103, plans, new PipelineStats());
+            assertEquals(32768, engine.len());
+            assertEquals((32768 - 4096) / 2, engine.padding());
+            assertTrue(engine.size(28) > 4096);
+            assertTrue(engine.kernelSize(28) < 64);
+        }
+    }
+
+    @Test
+    public void powerMatchesGoertzel() throws Exception {
+        try (FftPlans plans = new FftPlans(PlannerRigor.ESTIMATE)) {
+            ConstantQEngine engine = new ConstantQEngine(StandardWindows.HANNING, 4096, SAMPLE_RATE, -5.0, 1.0,
+                    28, 103, plans, new PipelineStats());
+            int len = engine.len();
+            // the same windows, as none are capped at this length
+            GoertzelEngine goertzel = new GoertzelEngine(StandardWindows.HANNING, len, SAMPLE_RATE, -5.0, 1.0,
+                    28, 103, new PipelineStats());
+
+            Random random = new Random(1);
+            double[] samples = new double[len];
+            for (int n = 0; n < 6; n++) {
+                double omega = 2 * Math.PI * MidiFreqRelations.mid2freq[28 + random.nextInt(76)] / SAMPLE_RATE;
+                double amp = 0.1 + 0.2 * random.nextDouble();
+                for (int i = 0; i < len; i++) {
+                    samples[i] += amp * Math.sin(omega * i);
+                }
+            }
+            for (int i = 0; i < len; i++) {
+                samples[i] += 1e-3 * random.nextGaussian();
+            }
+
+            double[] expected = new double[76];
+            goertzel.power(samples, expected, new double[8]);
+            double[] p = new double[76];
+            try (FftPlans.Lease plan = plans.lease(len, 1)) {
+                plan.input().put(samples, 0, len);
+                plan.execute();
+                DoubleBuffer spectrum = plan.output();
+                engine.power(spectrum, 0, p);
+            }
+            // the dropped kernel bins cost a little of the loudest notes
+            double max = 0;
+            for (int n = 0; n < 76; n++) {
+                max = Math.max(max, expected[n]);
+            }
+            for (int n = 0; n < 76; n++) {
+                assertEquals("note " + (28 + n), expected[n], p[n], max * 1e-3);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+
+import org.junit.Test;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+public class DecimatorTest {
+
+    private static final int HOP = 512;
+
+    private static double[] decimate(double[] samples, float sampleRate, int factor) throws Exception {
+        DoubleBuffer in = DoubleBuffer.wrap(samples);
+        // short reads, to cross block boundaries
+        SampleSource source = dst -> {
+            if (!in.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(dst.remaining(), in.remaining()), 1000);
+            for (int i = 0; i < n; i++) {
+                dst.put(in.get());
+            }
+            return n;
+        };
+        Decimator decimator = new Decimator(source, sampleRate, factor, 103);
+        DoubleBuffer out = DoubleBuffer.allocate(samples.length);
+        while (decimator.read(out) >= 0) {
+            if (!out.hasRemaining()) {
+                break;
+            }
+        }
+        out.flip();
+        double[] result = new double[out.remaining()];
+        out.get(result);
+        return result;
+    }
+
+    private static double[] tone(double freq, float sampleRate, int len) {
+        double[] samples = new double[len];
+        for (int i = 0; i < len; i++) {
+            samples[i] = Math.sin(2 * Math.PI * freq * i / sampleRate);
+        }
+        return samples;
+    }
+
+    private static double peak(double[] samples, int from, int to) {
+        double peak = 0;
+        for (int i = from; i < to; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+
+    @Test
+    public void factorKeepsTheTopNote() throws Exception {
+        assertEquals(4, Decimator.factor(44100, 103, HOP));
+        assertEquals(4, Decimator.factor(48000, 103, HOP));
+        assertEquals(8, Decimator.factor(96000, 103, HOP));
+        assertEquals(1, Decimator.factor(8000, 103, HOP));
+        // at most the hop
+        assertEquals(2, Decimator.factor(96000, 103, 2));
+    }
+
+    @Test
+    public void keptSamplesLineUp() throws Exception {
+        double[] samples = new double[10000];
+        samples[4000] = 1;
+        double[] out = decimate(samples, 44100, 4);
+        assertEquals(2500, out.length);
+        int max = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] > out[max]) {
+                max = i;
+            }
+        }
+        assertEquals(1000, max);
+    }
+
+    @Test
+    public void passesNotesAndStopsAliases() throws Exception {
+        float sampleRate = 96000;
+        int len = 96000;
+        double top = MidiFreqRelations.mid2freq[103];
+        double[] passed = decimate(tone(top, sampleRate, len), sampleRate, 8);
+        assertEquals(1.0, peak(passed, 1000, passed.length - 1000), 1e-3);
+        // would fold back to 2 kHz at 12 kHz
+        double[] stopped = decimate(tone(10000, sampleRate, len), sampleRate, 8);
+        assertTrue(peak(stopped, 1000, stopped.length - 1000) < 1e-4);
+    }
+
+}
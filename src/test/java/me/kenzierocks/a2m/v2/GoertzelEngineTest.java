@@ -0,0 +1,108 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+public class GoertzelEngineTest {
+
+    private static final int LEN = 4096;
+    private static final float SAMPLE_RATE = 44100;
+
+    private final boolean abs_flg = Extern.abs_flg;
+
+    @After
+    public void restoreFlags() {
+        Extern.abs_flg = abs_flg;
+    }
+
+    private static GoertzelEngine engine() {
+        return new GoertzelEngine(StandardWindows.HANNING, LEN, SAMPLE_RATE, -5.0, 1.0, 28, 103,
+                new PipelineStats());
+    }
+
+    @Test
+    public void powerMatchesWindowedDft() throws Exception {
+        GoertzelEngine engine = engine();
+        Random random = new Random(1);
+        double[] samples = new double[LEN];
+        for (int i = 0; i < LEN; i++) {
+            samples[i] = random.nextGaussian();
+        }
+        double[] p = new double[76];
+        engine.power(samples, p, new double[8]);
+
+        for (int note = 28; note <= 103; note++) {
+            int size = engine.size(note);
+            int from = (LEN - size) / 2;
+            double[] w = StandardWindows.HANNING.coefficients(size);
+            double omega = 2 * Math.PI * MidiFreqRelations.mid2freq[note] / SAMPLE_RATE;
+            double re = 0;
+            double im = 0;
+            for (int i = 0; i < size; i++) {
+                double x = samples[from + i] * w[i];
+                re += x * Math.cos(omega * i);
+                im -= x * Math.sin(omega * i);
+            }
+            double expected = (re * re + im * im) / StandardWindows.HANNING.init_den(size);
+            assertEquals("note " + note, expected, p[note - 28], expected * 1e-9);
+        }
+    }
+
+    @Test
+    public void soundingNoteStandsOut() throws Exception {
+        Extern.abs_flg = true;
+        GoertzelEngine engine = engine();
+        for (int note : new int[] { 33, 45, 69, 100 }) {
+            double omega = 2 * Math.PI * MidiFreqRelations.mid2freq[note] / SAMPLE_RATE;
+            double[] samples = new double[LEN];
+            for (int i = 0; i < LEN; i++) {
+                samples[i] = 0.5 * Math.sin(omega * i);
+            }
+            double[] p = new double[76];
+            byte[] vel = new byte[128];
+            engine.power(samples, p, new double[8]);
+            engine.intensity(p, vel);
+            assertTrue("note " + note, vel[note] > 0);
+            assertEquals(0, vel[note - 1]);
+            assertEquals(0, vel[note + 1]);
+            // the window's sidelobes may still clear the threshold
+            for (int n = 0; n < 128; n++) {
+                if (n != note) {
+                    assertTrue("note " + n + " with " + note, vel[n] < vel[note] / 4);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HCTest {
+
+    @Test
+    public void bandMatchesFullConversion() throws Exception {
+        Random random = new Random(1);
+        for (int len : new int[] { 16, 17, 4096 }) {
+            double[] data = new double[len * 2];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = random.nextGaussian();
+            }
+            // a zero bin takes the zero-phase path
+            data[len + 3] = 0;
+            data[2 * len - 3] = 0;
+            int bins = len / 2 + 1;
+            double[] amp2 = new double[bins];
+            double[] phs = new double[bins];
+            DoubleBuffer freq = DoubleBuffer.wrap(data);
+            freq.position(len);
+            HC.to_polar2(len, freq, 1, 3.0, amp2, phs);
+            assertEquals(2 * len, freq.position());
+
+            for (int trial = 0; trial < 50; trial++) {
+                int from = trial == 0 ? 0 : random.nextInt(bins);
+                int to = trial == 0 ? bins : from + random.nextInt(bins - from + 1);
+                double[] bandAmp2 = new double[bins];
+                double[] bandPhs = new double[bins];
+                Arrays.fill(bandAmp2, -1);
+                Arrays.fill(bandPhs, -1);
+                freq.position(len);
+                HC.to_polar2(len, freq, 1, 3.0, bandAmp2, bandPhs, from, to);
+                assertEquals(2 * len, freq.position());
+                for (int i = 0; i < bins; i++) {
+                    boolean inBand = i >= from && i < to;
+                    assertEquals(inBand ? amp2[i] : -1, bandAmp2[i], 0);
+                    assertEquals(inBand ? phs[i] : -1, bandPhs[i], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void complexMatchesHalfcomplex() throws Exception {
+        Random random = new Random(1);
+        for (int len : new int[] { 16, 4096 }) {
+            double[] samples = new double[len];
+            for (int i = 0; i < len; i++) {
+                samples[i] = random.nextGaussian();
+            }
+            int bins = len / 2 + 1;
+            double[] amp2 = new double[bins];
+            double[] phs = new double[bins];
+            double[] floatAmp2 = new double[bins];
+            double[] floatPhs = new double[bins];
+            try (FftPlans plans = new FftPlans(PlannerRigor.ESTIMATE);
+                    FftPlans.Lease plan = plans.lease(len, 1);
+                    FftPlans.FloatLease floatPlan = plans.leaseFloat(len, 1)) {
+                plan.input().put(samples);
+                plan.execute();
+                HC.to_polar2(len, plan.output(), 0, 3.0, amp2, phs);
+                FloatBuffer input = floatPlan.input();
+                for (double sample : samples) {
+                    input.put((float) sample);
+                }
+                floatPlan.execute();
+                FloatBuffer freq = floatPlan.output();
+                HC.c_to_polar2(len, freq, 3.0, floatAmp2, floatPhs, 0, bins);
+                assertEquals(FftPlans.complexLength(len), freq.position());
+            }
+            double max = 0;
+            for (int i = 0; i < bins; i++) {
+                max = Math.max(max, amp2[i]);
+            }
+            for (int i = 0; i < bins; i++) {
+                assertEquals("bin " + i, amp2[i], floatAmp2[i], max * 1e-5);
+                if (amp2[i] > max * 1e-3) {
+                    assertEquals("bin " + i, phs[i], floatPhs[i], 1e-3);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LiveNotesTest {
+
+    @Test
+    public void matchesOfflineWhenVelocitiesDoNotRise() throws Exception {
+        matchesOffline(ProcessorConfig.defaults());
+    }
+
+    @Test
+    public void matchesOfflineWithOtherThresholds() throws Exception {
+        matchesOffline(ProcessorConfig.builder()
+                .onThreshold(12)
+                .shortNoteVelocities(Arrays.asList(80, 40, 20))
+                .build());
+    }
+
+    private static void matchesOffline(ProcessorConfig config) {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 200; trial++) {
+            List<byte[]> frames = frames(random, 1 + random.nextInt(300));
+
+            // Processor, minus the octaves
+            Notes notes = new Notes();
+            int[] on_event = new int[128];
+            Arrays.fill(on_event, -1);
+            for (int step = 0; step < frames.size(); step++) {
+                notes.check(step, frames.get(step), on_event, config.onThreshold(), 0, config.peakThreshold());
+            }
+            notes.regulate();
+            List<Integer> shortNotes = config.shortNoteVelocities();
+            for (int i = 0; i < shortNotes.size(); i++) {
+                notes.remove_shortnotes(i + 1, shortNotes.get(i));
+            }
+
+            List<int[]> sent = new ArrayList<>();
+            int[] step = new int[1];
+            LiveNotes live = new LiveNotes((s, event, note, vel) -> {
+                // no event is sent later than the hold allows
+                assertTrue(step[0] - s <= LiveNotes.hold(config));
+                sent.add(new int[] { s, event ? 1 : 0, note, vel });
+            }, config);
+            for (; step[0] < frames.size(); step[0]++) {
+                live.check(step[0], frames.get(step[0]));
+            }
+            live.end();
+
+            List<int[]> expected = new ArrayList<>();
+            for (int i = 0; i < notes.count(); i++) {
+                expected.add(new int[] { notes.step(i), notes.event(i) ? 1 : 0, notes.note(i), notes.vel(i) });
+            }
+            // held on events go out later than events of the steps after them
+            Comparator<int[]> order = Comparator.<int[]> comparingInt(e -> e[0]).thenComparingInt(e -> e[2])
+                    .thenComparingInt(e -> e[1]);
+            expected.sort(order);
+            sent.sort(order);
+            assertEquals("events, trial " + trial, expected.size(), sent.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("event " + i + ", trial " + trial, Arrays.toString(expected.get(i)),
+                        Arrays.toString(sent.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Notes start at any velocity and only fade until they end, so that the
+     * velocity of an on event is known when it starts. The last frame is
+     * silent.
+     */
+    private static List<byte[]> frames(Random random, int count) {
+        List<byte[]> frames = new ArrayList<>();
+        byte[] vel = new byte[128];
+        for (int f = 0; f < count; f++) {
+            vel = vel.clone();
+            for (int i = 20; i < 40; i++) {
+                if (vel[i] > 0) {
+                    vel[i] = random.nextInt(3) == 0 ? 0 : (byte) Math.max(1, vel[i] - random.nextInt(4));
+                } else if (random.nextInt(6) == 0) {
+                    vel[i] = (byte) (1 + random.nextInt(127));
+                }
+            }
+            frames.add(vel);
+        }
+        // ends every note, as the two differ in how they end notes left on
+        frames.add(new byte[128]);
+        return frames;
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+public class MidiTest {
+
+    @Test
+    public void matchesMidiSystemWrite() throws Exception {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 50; trial++) {
+            Notes notes = new Notes();
+            int count = trial == 0 ? 0 : random.nextInt(20000);
+            boolean sorted = trial % 5 != 0;
+            int step = 0;
+            for (int i = 0; i < count; i++) {
+                if (sorted) {
+                    // mostly short gaps, some needing 3 and 4 byte lengths
+                    int gap = random.nextInt(100) == 0 ? random.nextInt(1 << 24) : random.nextInt(4);
+                    step += gap;
+                } else {
+                    step = random.nextInt(1000);
+                }
+                boolean on = random.nextBoolean();
+                notes.append(step, on, (byte) random.nextInt(128), (byte) (on ? random.nextInt(128) : 64));
+            }
+            long div = 1 + random.nextInt(100);
+
+            ByteArrayOutputStream direct = new ByteArrayOutputStream();
+            Midi.output_midi(notes, div, direct);
+            assertArrayEquals("trial " + trial, viaSequence(notes, div), direct.toByteArray());
+        }
+    }
+
+    private static byte[] viaSequence(Notes notes, long div) throws Exception {
+        Sequence seq = new Sequence(Sequence.PPQ, (int) div, 1);
+        Track track = seq.getTracks()[0];
+        track.add(new MidiEvent(new MetaMessage(0x51, new byte[] { 0x07, (byte) 0xA1, 0x20 }, 3), 0));
+        for (int i = 0; i < notes.count(); i++) {
+            ShortMessage msg = notes.event(i)
+                    ? new ShortMessage(ShortMessage.NOTE_ON, 0, notes.note(i), notes.vel(i))
+                    : new ShortMessage(ShortMessage.NOTE_OFF, 0, notes.note(i), 0);
+            track.add(new MidiEvent(msg, notes.step(i)));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiSystem.write(seq, 1, out);
+        return out.toByteArray();
+    }
+
+}
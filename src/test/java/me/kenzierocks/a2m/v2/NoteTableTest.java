@@ -0,0 +1,71 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+
+public class NoteTableTest {
+
+    @Test
+    public void matchesGetNoteAtBoundaries() throws Exception {
+        NoteTable table = new NoteTable(44100, 4096);
+        for (double f : MidiFreqRelations.mid2freq) {
+            // the note boundaries are half a semitone below each note
+            double edge = f * Math.pow(2, -1 / 24.0);
+            for (double x = edge * 0.999; x < edge * 1.001; x = Math.nextUp(x) + edge * 1e-7) {
+                assertNote(table, x);
+            }
+            assertNote(table, f);
+        }
+    }
+
+    @Test
+    public void matchesGetNoteOnRandomFrequencies() throws Exception {
+        Random random = new Random(1);
+        NoteTable table = new NoteTable(48000, 2048);
+        for (int i = 0; i < 100000; i++) {
+            assertNote(table, Math.pow(2, random.nextDouble() * 18));
+        }
+    }
+
+    @Test
+    public void matchesGetNoteOutsideTable() throws Exception {
+        NoteTable table = new NoteTable(44100, 4096);
+        for (double f : new double[] { 0, -0.0, -1, Double.NaN, 1e-300, 1, 1e6, Double.POSITIVE_INFINITY }) {
+            assertNote(table, f);
+        }
+    }
+
+    private static void assertNote(NoteTable table, double f) {
+        assertEquals("f = " + f, MidiFreqRelations.get_note(f), table.note(f));
+    }
+
+}
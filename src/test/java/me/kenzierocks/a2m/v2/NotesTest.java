@@ -0,0 +1,279 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NotesTest {
+
+    @Test
+    public void regulateEmpty() throws Exception {
+        Notes notes = new Notes();
+        notes.regulate();
+        assertEquals(0, notes.count());
+    }
+
+    @Test
+    public void regulateClosesRepeatedOn() throws Exception {
+        Notes notes = new Notes();
+        notes.append(0, true, (byte) 60, (byte) 100);
+        notes.append(2, true, (byte) 60, (byte) 90);
+        notes.append(5, false, (byte) 60, (byte) 64);
+        notes.append(6, false, (byte) 61, (byte) 64);
+        notes.regulate();
+
+        assertEquals(4, notes.count());
+        assertEvent(notes, 0, 0, true, 60);
+        assertEvent(notes, 1, 2, false, 60);
+        assertEvent(notes, 2, 2, true, 60);
+        assertEvent(notes, 3, 5, false, 60);
+    }
+
+    @Test
+    public void regulateClosesOpenNotes() throws Exception {
+        Notes notes = new Notes();
+        notes.append(0, true, (byte) 60, (byte) 100);
+        notes.append(3, true, (byte) 64, (byte) 100);
+        notes.append(4, false, (byte) 64, (byte) 64);
+        notes.regulate();
+
+        assertEquals(4, notes.count());
+        assertEvent(notes, 3, 5, false, 60);
+    }
+
+    @Test
+    public void removeShortQuietNotes() throws Exception {
+        Notes notes = new Notes();
+        notes.append(0, true, (byte) 60, (byte) 20);
+        notes.append(1, true, (byte) 64, (byte) 100);
+        notes.append(1, false, (byte) 60, (byte) 64);
+        notes.append(2, false, (byte) 64, (byte) 64);
+        notes.remove_shortnotes(1, 64);
+
+        assertEquals(2, notes.count());
+        assertEvent(notes, 0, 1, true, 64);
+        assertEvent(notes, 1, 2, false, 64);
+    }
+
+    @Test
+    public void chainMatchesBaselinePasses() throws Exception {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 500; trial++) {
+            Notes notes = new Notes();
+            Notes filtered = new Notes();
+            NoteSink post = NoteStage.chain(
+                    NoteStage.regulate(),
+                    NoteStage.remove_shortnotes(1, 64),
+                    NoteStage.remove_shortnotes(2, 28),
+                    NoteStage.remove_octaves()).into(filtered);
+            int[] on_event = new int[128];
+            Arrays.fill(on_event, -1);
+            byte[] vel = new byte[128];
+            int fed = 0;
+            for (int step = 0; step < 200; step++) {
+                randomVelocities(random, vel);
+                notes.check(step, vel, on_event, 8, 0, 20);
+                int settled = notes.settled(on_event);
+                notes.feed(fed, settled, post);
+                fed = settled;
+            }
+            notes.feed(fed, notes.count(), post);
+            post.end();
+
+            // the passes Processor ran after the analysis, before the chain
+            BaselineNotes baseline = baseline(notes);
+            baseline.regulate();
+            baseline.remove_shortnotes(1, 64);
+            baseline.remove_shortnotes(2, 28);
+            baseline.remove_octaves();
+            assertSame(baseline, filtered);
+        }
+    }
+
+    @Test
+    public void removeOctavesKeepsBaselineFlags() throws Exception {
+        Notes notes = new Notes();
+        notes.append(0, true, (byte) 48, (byte) 100);
+        // quieter than the octave below, so removed
+        notes.append(1, true, (byte) 60, (byte) 50);
+        // louder, so kept
+        notes.append(1, true, (byte) 61, (byte) 120);
+        notes.append(1, true, (byte) 49, (byte) 10);
+        notes.append(3, false, (byte) 60, (byte) 64);
+        notes.append(3, false, (byte) 61, (byte) 64);
+        notes.append(4, false, (byte) 48, (byte) 64);
+        notes.append(4, false, (byte) 49, (byte) 64);
+        notes.remove_octaves();
+
+        // the flags are looked up by the index of the off event, not its note
+        assertEquals(8, notes.count());
+        BaselineNotes baseline = baseline(notes);
+        baseline.remove_octaves();
+        assertSame(baseline, notes);
+    }
+
+    @Test
+    public void removeLongQuietNotes() throws Exception {
+        Notes notes = new Notes();
+        notes.append(0, true, (byte) 60, (byte) 20);
+        notes.append(0, true, (byte) 64, (byte) 100);
+        notes.append(10, false, (byte) 60, (byte) 64);
+        notes.append(10, false, (byte) 64, (byte) 64);
+        notes.remove_longnotes(10, 64);
+
+        assertEquals(2, notes.count());
+        assertEvent(notes, 0, 0, true, 64);
+        assertEvent(notes, 1, 10, false, 64);
+    }
+
+    @Test
+    public void filtersMatchBaseline() throws Exception {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 500; trial++) {
+            int count = 1 + random.nextInt(300);
+            for (int filter = 0; filter < 4; filter++) {
+                // the baseline regulate looped forever on a note switched on
+                // twice, and threw when left with no events
+                Notes events = randomEvents(random, count, filter != 0);
+                Notes notes = copy(events);
+                BaselineNotes baseline = baseline(events);
+                switch (filter) {
+                    case 0:
+                        notes.regulate();
+                        baseline.regulate();
+                        break;
+                    case 1:
+                        int min_duration = 1 + random.nextInt(3);
+                        int min_vel = random.nextInt(128);
+                        notes.remove_shortnotes(min_duration, min_vel);
+                        baseline.remove_shortnotes(min_duration, min_vel);
+                        break;
+                    case 2:
+                        int max_duration = 1 + random.nextInt(10);
+                        int max_vel = random.nextInt(128);
+                        notes.remove_longnotes(max_duration, max_vel);
+                        baseline.remove_longnotes(max_duration, max_vel);
+                        break;
+                    default:
+                        notes.remove_octaves();
+                        baseline.remove_octaves();
+                        break;
+                }
+                assertSame(baseline, notes);
+            }
+        }
+    }
+
+    @Test
+    public void checkMatchesBaseline() throws Exception {
+        Random random = new Random(2);
+        for (int trial = 0; trial < 100; trial++) {
+            Notes notes = new Notes();
+            BaselineNotes baseline = new BaselineNotes();
+            int[] on_event = new int[128];
+            int[] baseline_on_event = new int[128];
+            Arrays.fill(on_event, -1);
+            Arrays.fill(baseline_on_event, -1);
+            byte[] vel = new byte[128];
+            for (int step = 0; step < 200; step++) {
+                randomVelocities(random, vel);
+                notes.check(step, vel, on_event, 8, 0, 20);
+                baseline.check(step, vel, baseline_on_event, 8, 0, 20);
+                assertArrayEquals(baseline_on_event, on_event);
+            }
+            assertSame(baseline, notes);
+        }
+    }
+
+    /**
+     * Events in any order, including orphan off events and, if
+     * {@code repeatedOn}, notes switched on twice, a few octaves apart.
+     * Otherwise the first event is an on, so some event is always kept.
+     */
+    private static Notes randomEvents(Random random, int count, boolean repeatedOn) {
+        Notes notes = new Notes();
+        boolean[] on = new boolean[128];
+        int step = 0;
+        for (int i = 0; i < count; i++) {
+            step += random.nextInt(3);
+            int note = 48 + random.nextInt(30);
+            boolean event = (random.nextBoolean() || (!repeatedOn && i == 0)) && (repeatedOn || !on[note]);
+            on[note] = event;
+            notes.append(step, event, (byte) note, (byte) random.nextInt(128));
+        }
+        return notes;
+    }
+
+    private static void randomVelocities(Random random, byte[] vel) {
+        for (int i = 40; i < 80; i++) {
+            int choice = random.nextInt(10);
+            vel[i] = choice < 4 ? 0 : choice < 7 ? vel[i] : (byte) random.nextInt(128);
+        }
+    }
+
+    private static Notes copy(Notes events) {
+        Notes notes = new Notes();
+        events.feed(0, events.count(), notes);
+        return notes;
+    }
+
+    private static BaselineNotes baseline(Notes events) {
+        BaselineNotes baseline = new BaselineNotes();
+        for (int i = 0; i < events.count(); i++) {
+            baseline.append(events.step(i), events.event(i), events.note(i), events.vel(i));
+        }
+        return baseline;
+    }
+
+    private static void assertSame(BaselineNotes expected, Notes notes) {
+        assertEquals("events", expected.count(), notes.count());
+        for (int i = 0; i < expected.count(); i++) {
+            BaselineNotes.Note n = expected.getNote(i);
+            assertEquals("step " + i, n.step, notes.step(i));
+            assertEquals("event " + i, n.event, notes.event(i));
+            assertEquals("note " + i, n.note, notes.note(i));
+            assertEquals("vel " + i, n.vel, notes.vel(i));
+        }
+    }
+
+    private static void assertEvent(Notes notes, int index, int step, boolean on, int note) {
+        assertEquals(step, notes.step(index));
+        if (on) {
+            assertTrue(notes.event(index));
+        } else {
+            assertFalse(notes.event(index));
+        }
+        assertEquals(note, notes.note(index));
+    }
+
+}
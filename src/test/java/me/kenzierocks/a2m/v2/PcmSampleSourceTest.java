@@ -0,0 +1,171 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Test;
+
+public class PcmSampleSourceTest {
+
+    /**
+     * Returns fewer bytes than asked for, splitting samples and frames across
+     * reads.
+     */
+    private static final class TrickleStream extends FilterInputStream {
+
+        private final Random random;
+
+        TrickleStream(InputStream in, Random random) {
+            super(in);
+            this.random = random;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1 + random.nextInt(300)));
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+    }
+
+    @Test
+    public void matchesDecodingEverything() throws Exception {
+        Random random = new Random(1);
+        for (int bits : new int[] { 8, 16, 24 }) {
+            for (boolean signed : new boolean[] { true, false }) {
+                for (boolean bigEndian : new boolean[] { true, false }) {
+                    for (int channels = 1; channels <= 2; channels++) {
+                        AudioFormat format = new AudioFormat(
+                                signed ? AudioFormat.Encoding.PCM_SIGNED : AudioFormat.Encoding.PCM_UNSIGNED,
+                                44100, bits, channels, channels * bits / 8, 44100, bigEndian);
+                        // a trailing partial frame, which both drop
+                        byte[] bytes = new byte[(5000 + random.nextInt(100)) * format.getFrameSize() + 1];
+                        random.nextBytes(bytes);
+                        double[] expected = decodeEverything(new BufferedInputStream(convert(bytes, format)), channels);
+
+                        PcmSampleSource source = new PcmSampleSource(
+                                new TrickleStream(new BufferedInputStream(convert(bytes, format)), random), channels);
+                        assertArrayEquals(format.toString(), expected, readAll(source, random), 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void littleEndianMatchesBigEndian() throws Exception {
+        Random random = new Random(2);
+        for (int channels = 1; channels <= 2; channels++) {
+            byte[] big = new byte[4000 * channels * 2];
+            random.nextBytes(big);
+            byte[] little = new byte[big.length];
+            for (int i = 0; i < big.length; i += 2) {
+                little[i] = big[i + 1];
+                little[i + 1] = big[i];
+            }
+            double[] expected = decodeEverything(new ByteArrayInputStream(big), channels);
+            PcmSampleSource source = new PcmSampleSource(
+                    new TrickleStream(new ByteArrayInputStream(little), random), channels, false);
+            assertArrayEquals("channels " + channels, expected, readAll(source, random), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsMoreThanTwoChannels() throws Exception {
+        new PcmSampleSource(new ByteArrayInputStream(new byte[0]), 3);
+    }
+
+    /**
+     * Converts to 16-bit big-endian, the same way Processor does.
+     */
+    private static InputStream convert(byte[] bytes, AudioFormat format) {
+        AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(bytes), format,
+                bytes.length / format.getFrameSize());
+        AudioFormat sfinfo = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                format.getSampleRate(),
+                16,
+                format.getChannels(),
+                format.getChannels() * 2,
+                format.getSampleRate(),
+                true);
+        return AudioSystem.getAudioInputStream(sfinfo, in);
+    }
+
+    /**
+     * The decoding Processor did before reading through a SampleSource.
+     */
+    private static double[] decodeEverything(InputStream sf, int channels) throws IOException {
+        DoubleBuffer audioData = DoubleBuffer.allocate(1 << 16);
+        DataInputStream stream = new DataInputStream(sf);
+        while (true) {
+            try {
+                if (channels == 1) {
+                    audioData.put(stream.readShort() / 32768.0);
+                } else {
+                    double l = stream.readShort() / 32768.0;
+                    double r = stream.readShort() / 32768.0;
+                    audioData.put((l + r) / 2);
+                }
+            } catch (EOFException end) {
+                break;
+            }
+        }
+        return Arrays.copyOf(audioData.array(), audioData.position());
+    }
+
+    private static double[] readAll(SampleSource source, Random random) throws IOException {
+        DoubleBuffer all = DoubleBuffer.allocate(1 << 16);
+        while (true) {
+            DoubleBuffer dst = all.duplicate();
+            dst.limit(Math.min(all.capacity(), all.position() + 1 + random.nextInt(700)));
+            if (source.read(dst) < 0) {
+                break;
+            }
+            all.position(dst.position());
+        }
+        return Arrays.copyOf(all.array(), all.position());
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import me.kenzierocks.a2m.v2.PipelineStats.Stage;
+import me.kenzierocks.a2m.v2.PipelineStats.StageStats;
+
+public class PipelineStatsTest {
+
+    @Test
+    public void percentilesBoundEachBucket() throws Exception {
+        StageStats stats = new PipelineStats().stage(Stage.FFT);
+        assertEquals(0, stats.percentile(0.5));
+        for (int i = 0; i < 99; i++) {
+            stats.record(100);
+        }
+        stats.record(5000);
+
+        assertEquals(100, stats.getCalls());
+        assertEquals(99 * 100 + 5000, stats.getTotalNanos());
+        // 100 is in [64, 128)
+        assertEquals(127, stats.getMedianNanos());
+        assertEquals(127, stats.getP99Nanos());
+        // capped by the largest time seen
+        assertEquals(5000, stats.percentile(1.0));
+        assertEquals(5000, stats.getMaxNanos());
+    }
+
+    @Test
+    public void publishedWhileContextIsOpen() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName all = new ObjectName("me.kenzierocks.a2m:*");
+        Set<ObjectName> before = server.queryNames(all, null);
+        try (ProcessorContext context = new ProcessorContext(PlannerRigor.ESTIMATE, 0)) {
+            context.stats().stage(Stage.PEAKS).record(10);
+            Set<ObjectName> open = server.queryNames(all, null);
+            assertEquals(before.size() + Stage.values().length + 2, open.size());
+            open.removeAll(before);
+            ObjectName pipeline = open.stream()
+                    .filter(name -> name.getKeyProperty("type").equals("Pipeline"))
+                    .findFirst().get();
+            assertEquals(1L, server.getAttribute(pipeline, "Frames"));
+        }
+        assertTrue(server.queryNames(all, null).equals(before));
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+import me.kenzierocks.a2m.v2.ParallelWindower.TaskResult;
+
+public class SampleRingTest {
+
+    /**
+     * Hands out {@code data} in chunks of random size, as a decoder would.
+     */
+    private static final class ChunkedSource implements SampleSource {
+
+        private final double[] data;
+        private final Random random;
+        private int position;
+
+        ChunkedSource(double[] data, Random random) {
+            this.data = data;
+            this.random = random;
+        }
+
+        @Override
+        public int read(DoubleBuffer dst) {
+            if (position == data.length) {
+                return -1;
+            }
+            int n = Math.min(Math.min(dst.remaining(), data.length - position), 1 + random.nextInt(50));
+            dst.put(data, position, n);
+            position += n;
+            return n;
+        }
+
+    }
+
+    /**
+     * Puts a hash of each frame, and of the frame before it, into its
+     * velocities.
+     */
+    private static final class HashingEngine implements AnalysisEngine {
+
+        private final int len;
+
+        HashingEngine(int len) {
+            this.len = len;
+        }
+
+        @Override
+        public int len() {
+            return len;
+        }
+
+        @Override
+        public void analyze(Frame previous, Frame[] frames, int count, byte[][] vel) {
+            int before = previous == null ? 0 : hash(previous);
+            for (int i = 0; i < count; i++) {
+                int hash = hash(frames[i]);
+                Arrays.fill(vel[i], (byte) 0);
+                for (int b = 0; b < 4; b++) {
+                    vel[i][b] = (byte) (hash >>> 8 * b);
+                    vel[i][4 + b] = (byte) (before >>> 8 * b);
+                }
+                before = hash;
+            }
+        }
+
+        private int hash(Frame frame) {
+            double[] samples = new double[len];
+            frame.read(samples, len);
+            return Arrays.hashCode(samples);
+        }
+
+    }
+
+    @Test
+    public void windowsMatchFlatBuffer() throws Exception {
+        Random random = new Random(1);
+        int len = 64;
+        int hop = 24;
+        int inFlight = 5;
+        for (int trial = 0; trial < 200; trial++) {
+            // wraps around many times, and ends part way into a frame
+            double[] data = randomSamples(random, 3000 + random.nextInt(hop * 4));
+            try (SampleRing ring = new SampleRing((inFlight + 1) * hop + len, len)) {
+                SampleSource source = new ChunkedSource(data, random);
+                Deque<Long> live = new ArrayDeque<>();
+                long start = 0;
+                while (ring.fill(source, start + len + 1)) {
+                    live.addLast(start);
+                    if (live.size() > inFlight) {
+                        live.removeFirst();
+                    }
+                    // the older windows must not have been overwritten
+                    for (long s : live) {
+                        assertWindow(data, ring.window(s), s, len);
+                    }
+                    start += hop;
+                }
+                assertTrue(start + len + 1 > data.length);
+                assertEquals(data.length, ring.written());
+                assertFalse(ring.fill(source, start + len + 1));
+            }
+        }
+    }
+
+    @Test
+    public void ringFeedMatchesBufferFeed() throws Exception {
+        Random random = new Random(2);
+        int len = 128;
+        int hop = 40;
+        try (ProcessorContext context = new ProcessorContext(PlannerRigor.ESTIMATE, 0)) {
+            for (int trial = 0; trial < 20; trial++) {
+                double[] data = randomSamples(random, 20000 + random.nextInt(hop * 4));
+                int framesPerTask = 1 + random.nextInt(8);
+                int padding = random.nextInt(len);
+                List<byte[]> expected = analyze(context,
+                        new ParallelWindower(DoubleBuffer.wrap(data), len, hop, framesPerTask, padding), len);
+                List<byte[]> actual = analyze(context,
+                        new ParallelWindower(new ChunkedSource(data, random), len, hop, framesPerTask, padding), len);
+                assertEquals("frames, trial " + trial, expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertArrayEquals("frame " + i + ", trial " + trial, expected.get(i), actual.get(i));
+                }
+            }
+        }
+    }
+
+    private static List<byte[]> analyze(ProcessorContext context, ParallelWindower windower, int len) {
+        List<byte[]> frames = new ArrayList<>();
+        try {
+            Iterator<TaskResult> results = windower.process(context, new HashingEngine(len));
+            while (results.hasNext()) {
+                TaskResult result = results.next();
+                frames.add(result.vel().array.clone());
+                windower.recycle(result);
+            }
+        } finally {
+            windower.finish();
+        }
+        return frames;
+    }
+
+    private static double[] randomSamples(Random random, int length) {
+        double[] data = new double[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = random.nextDouble() * 2 - 1;
+        }
+        return data;
+    }
+
+    private static void assertWindow(double[] data, DoubleBuffer window, long start, int len) {
+        double[] actual = new double[len];
+        window.duplicate().get(actual);
+        assertArrayEquals("window at " + start, Arrays.copyOfRange(data, (int) start, (int) start + len), actual, 0.0);
+    }
+
+}
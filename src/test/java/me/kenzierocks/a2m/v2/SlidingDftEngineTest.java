@@ -0,0 +1,113 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import me.kenzierocks.a2m.MidiFreqRelations;
+import me.kenzierocks.a2m.v2.ParallelWindower.Frame;
+
+public class SlidingDftEngineTest {
+
+    private static final int LEN = 4096;
+    private static final int HOP = LEN / 8;
+    private static final float SAMPLE_RATE = 44100;
+    private static final int FRAMES = 16;
+
+    private final boolean abs_flg = Extern.abs_flg;
+
+    @After
+    public void restoreFlags() {
+        Extern.abs_flg = abs_flg;
+    }
+
+    private static FrameAnalyzer analyzer() {
+        double t0 = LEN / SAMPLE_RATE;
+        int i0 = (int) (MidiFreqRelations.mid2freq[28] * t0 - 0.5);
+        int i1 = (int) (MidiFreqRelations.mid2freq[103] * t0 - 0.5) + 1;
+        return new FrameAnalyzer(LEN, HOP, SAMPLE_RATE, -5.0, 1.0, i0, i1, t0, PeakSearch.HEAP);
+    }
+
+    @Test
+    public void windowsNeedFewTaps() throws Exception {
+        try (FftPlans plans = new FftPlans(PlannerRigor.ESTIMATE)) {
+            for (StandardWindows window : StandardWindows.values()) {
+                SlidingDftEngine engine = new SlidingDftEngine(window, LEN, HOP, analyzer(), plans,
+                        new PipelineStats());
+                assertTrue(window + ": " + engine.taps(), engine.taps() > 0 && engine.taps() < 16);
+            }
+        }
+    }
+
+    @Test
+    public void velocitiesMatchFft() throws Exception {
+        Extern.abs_flg = true;
+        Random random = new Random(1);
+        double[] samples = new double[LEN + FRAMES * HOP];
+        for (int n = 0; n < 6; n++) {
+            double omega = 2 * Math.PI * MidiFreqRelations.mid2freq[28 + random.nextInt(76)] / SAMPLE_RATE;
+            double amp = 0.1 + 0.2 * random.nextDouble();
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] += amp * Math.sin(omega * i) * Math.exp(-i / 20000.0);
+            }
+        }
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] += 1e-3 * random.nextGaussian();
+        }
+        Frame[] frames = new Frame[FRAMES + 1];
+        for (int f = 0; f <= FRAMES; f++) {
+            int from = f * HOP;
+            frames[f] = (dst, len) -> System.arraycopy(samples, from, dst, 0, len);
+        }
+        Frame[] block = new Frame[FRAMES];
+        System.arraycopy(frames, 1, block, 0, FRAMES);
+
+        try (FftPlans plans = new FftPlans(PlannerRigor.ESTIMATE)) {
+            for (StandardWindows window : StandardWindows.values()) {
+                AnalysisEngine fft = new FftEngine(window, LEN, analyzer(), plans, new PipelineStats());
+                AnalysisEngine sliding = new SlidingDftEngine(window, LEN, HOP, analyzer(), plans,
+                        new PipelineStats());
+                // the first block of a file, then one after another
+                for (Frame previous : new Frame[] { null, frames[0] }) {
+                    Frame[] input = previous == null ? frames : block;
+                    byte[][] expected = new byte[FRAMES][128];
+                    byte[][] vel = new byte[FRAMES][128];
+                    fft.analyze(previous, input, FRAMES, expected);
+                    sliding.analyze(previous, input, FRAMES, vel);
+                    for (int f = 0; f < FRAMES; f++) {
+                        assertArrayEquals(window + " frame " + f, expected[f], vel[f]);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+public class SpectralCacheTest {
+
+    private static final SpectralCache.Key KEY = key(Hashing.sha256().hashInt(1), 4096);
+
+    private static SpectralCache.Key key(HashCode input, int len) {
+        return key(input, len, Engine.FFT, false);
+    }
+
+    private static SpectralCache.Key key(HashCode input, int len, Engine engine, boolean singlePrecision) {
+        return SpectralCache.Key.of(input, len, len / 8, StandardWindows.HANNING, engine, false, singlePrecision,
+                28, 103);
+    }
+
+    private static float[] spectrum(int frame) {
+        float[] spectrum = new float[6];
+        for (int i = 0; i < spectrum.length; i++) {
+            spectrum[i] = frame * 10 + i + 0.5f;
+        }
+        return spectrum;
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(int frames) throws Exception {
+        Path file = folder.getRoot().toPath().resolve("spectra");
+        try (SpectralCache.Writer writer = new SpectralCache.Writer(file, KEY, 44100, 4096, 512, 7, 10)) {
+            for (int f = 0; f < frames; f++) {
+                writer.write(spectrum(f));
+            }
+            writer.commit();
+        }
+        return file;
+    }
+
+    @Test
+    public void roundTrips() throws Exception {
+        SpectralCache cache = SpectralCache.open(write(5), KEY);
+        assertNotNull(cache);
+        assertEquals(5, cache.frames());
+        assertEquals(44100, cache.sampleRate(), 0);
+        assertEquals(4096, cache.len());
+        assertEquals(512, cache.hop());
+        assertEquals(7, cache.bandFrom());
+        assertEquals(10, cache.bandTo());
+        float[] spectrum = new float[6];
+        for (int f = 4; f >= 0; f--) {
+            cache.read(f, spectrum);
+            assertArrayEquals(spectrum(f), spectrum, 0);
+        }
+    }
+
+    @Test
+    public void otherKeysMiss() throws Exception {
+        Path file = write(5);
+        assertNull(SpectralCache.open(file, key(Hashing.sha256().hashInt(2), 4096)));
+        assertNull(SpectralCache.open(file, key(Hashing.sha256().hashInt(1), 2048)));
+        assertNull(SpectralCache.open(file, key(Hashing.sha256().hashInt(1), 4096, Engine.SLIDING_DFT, false)));
+        assertNull(SpectralCache.open(file, key(Hashing.sha256().hashInt(1), 4096, Engine.FFT, true)));
+        assertNull(SpectralCache.open(folder.getRoot().toPath().resolve("missing"), KEY));
+    }
+
+    @Test
+    public void uncommittedLeavesNothing() throws Exception {
+        Path file = write(5);
+        try (SpectralCache.Writer writer = new SpectralCache.Writer(file, KEY, 44100, 4096, 512, 7, 10)) {
+            writer.write(spectrum(0));
+        }
+        // the committed spectra are left as they were
+        assertEquals(5, SpectralCache.open(file, KEY).frames());
+        try (SpectralCache.Writer writer = new SpectralCache.Writer(file.resolveSibling("other"), KEY, 44100,
+                4096, 512, 7, 10)) {
+            writer.write(spectrum(0));
+        }
+        assertFalse(Files.exists(file.resolveSibling("other")));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+}
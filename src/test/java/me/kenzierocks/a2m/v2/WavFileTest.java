@@ -0,0 +1,245 @@
+/*
+ * This file is part of AudioToMidi, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) TechShroom Studios <https://techshroom.com>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.a2m.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavFileTest {
+
+    private static final int PCM = 1;
+    private static final int FLOAT = 3;
+    private static final int EXTENSIBLE = 0xFFFE;
+
+    /**
+     * Builds a RIFF file chunk by chunk, padding odd-sized chunks.
+     */
+    private static final class Riff {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Riff() {
+            out.write(id("RIFF"), 0, 4);
+            out.write(new byte[4], 0, 4);
+            out.write(id("WAVE"), 0, 4);
+        }
+
+        Riff chunk(String id, byte[] body) {
+            return chunk(id, body.length, body);
+        }
+
+        /**
+         * Writes {@code body} under a chunk claiming to be {@code size} bytes.
+         */
+        Riff chunk(String id, long size, byte[] body) {
+            out.write(id(id), 0, 4);
+            out.write(le().putInt(0, (int) size).array(), 0, 4);
+            out.write(body, 0, body.length);
+            if ((body.length & 1) != 0) {
+                out.write(0);
+            }
+            return this;
+        }
+
+        Riff fmt(int format, int channels, int bits) {
+            return chunk("fmt ", fmtBody(format, channels, bits, 16).array());
+        }
+
+        byte[] bytes() {
+            byte[] bytes = out.toByteArray();
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, bytes.length - 8);
+            return bytes;
+        }
+
+    }
+
+    private static ByteBuffer le() {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] id(String id) {
+        return id.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static ByteBuffer fmtBody(int format, int channels, int bits, int size) {
+        ByteBuffer fmt = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        fmt.putShort((short) format);
+        fmt.putShort((short) channels);
+        fmt.putInt(44100);
+        fmt.putInt(44100 * channels * bits / 8);
+        fmt.putShort((short) (channels * bits / 8));
+        fmt.putShort((short) bits);
+        return fmt;
+    }
+
+    private static byte[] pcm16(int... samples) {
+        ByteBuffer data = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int s : samples) {
+            data.putShort((short) s);
+        }
+        return data.array();
+    }
+
+    private static byte[] pcm24(int... samples) {
+        byte[] data = new byte[samples.length * 3];
+        for (int i = 0; i < samples.length; i++) {
+            data[3 * i] = (byte) samples[i];
+            data[3 * i + 1] = (byte) (samples[i] >> 8);
+            data[3 * i + 2] = (byte) (samples[i] >> 16);
+        }
+        return data;
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private WavFile open(byte[] bytes) throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, bytes);
+        return WavFile.open(file);
+    }
+
+    private static double[] read(WavFile wav) {
+        double[] samples = new double[wav.frames()];
+        wav.read(0, samples, samples.length);
+        return samples;
+    }
+
+    @Test
+    public void decodesPcm16() throws Exception {
+        try (WavFile wav = open(new Riff().fmt(PCM, 1, 16).chunk("data", pcm16(0, 16384, -32768, 32767)).bytes())) {
+            assertEquals(1, wav.channels());
+            assertEquals(44100, wav.sampleRate(), 0);
+            assertArrayEquals(new double[] { 0, 0.5, -1, 32767 / 32768.0 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void averagesStereo() throws Exception {
+        try (WavFile wav = open(new Riff().fmt(PCM, 2, 16).chunk("data", pcm16(16384, 0, -32768, 32767)).bytes())) {
+            assertEquals(2, wav.channels());
+            assertArrayEquals(new double[] { 0.25, -0.5 / 32768 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void decodesPcm24() throws Exception {
+        byte[] data = pcm24(0, 1 << 22, -(1 << 23), (1 << 23) - 1, -1);
+        try (WavFile wav = open(new Riff().fmt(PCM, 1, 24).chunk("data", data).bytes())) {
+            assertArrayEquals(new double[] { 0, 0.5, -1, ((1 << 23) - 1) / (double) (1 << 23), -1.0 / (1 << 23) },
+                    read(wav), 0);
+        }
+    }
+
+    @Test
+    public void decodesFloat32() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(0.25f).putFloat(-1).putFloat(0.75f);
+        try (WavFile wav = open(new Riff().fmt(FLOAT, 1, 32).chunk("data", data.array()).bytes())) {
+            assertArrayEquals(new double[] { 0.25, -1, 0.75 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void readsExtensibleSubFormat() throws Exception {
+        ByteBuffer fmt = fmtBody(EXTENSIBLE, 1, 24, 40);
+        fmt.putShort(16, (short) 22);
+        fmt.putShort(18, (short) 24);
+        fmt.putShort(24, (short) PCM);
+        byte[] data = pcm24(1 << 22, -(1 << 22));
+        try (WavFile wav = open(new Riff().chunk("fmt ", fmt.array()).chunk("data", data).bytes())) {
+            assertArrayEquals(new double[] { 0.5, -0.5 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void skipsOddSizedChunks() throws Exception {
+        byte[] bytes = new Riff()
+                .chunk("LIST", new byte[] { 1, 2, 3 })
+                .fmt(PCM, 1, 16)
+                .chunk("junk", new byte[] { 4 })
+                .chunk("data", pcm16(16384, -16384))
+                .bytes();
+        try (WavFile wav = open(bytes)) {
+            assertArrayEquals(new double[] { 0.5, -0.5 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void clampsOverlongData() throws Exception {
+        // claims more than there is, and ends within the last sample
+        byte[] bytes = new Riff().fmt(PCM, 1, 16).chunk("data", 1000, pcm16(16384, -16384, 8192, 1)).bytes();
+        try (WavFile wav = open(Arrays.copyOf(bytes, bytes.length - 1))) {
+            assertArrayEquals(new double[] { 0.5, -0.5, 0.25 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void readsStreamedDataToTheEnd() throws Exception {
+        byte[] data = pcm16(16384, -16384);
+        try (WavFile wav = open(new Riff().fmt(PCM, 1, 16).chunk("data", 0xFFFFFFFFL, data).bytes())) {
+            assertArrayEquals(new double[] { 0.5, -0.5 }, read(wav), 0);
+        }
+    }
+
+    @Test
+    public void sourceReadsInOrder() throws Exception {
+        try (WavFile wav = open(new Riff().fmt(PCM, 1, 16).chunk("data", pcm16(16384, -16384, 8192)).bytes())) {
+            DoubleBuffer dst = DoubleBuffer.allocate(8);
+            SampleSource source = wav.source();
+            assertEquals(3, source.read(dst));
+            assertEquals(-1, source.read(dst));
+        }
+    }
+
+    @Test
+    public void leavesUnsupportedFilesToJavaxSound() throws Exception {
+        // a fmt chunk too short for the block alignment and bits
+        assertNull(open(new Riff().chunk("fmt ", Arrays.copyOf(fmtBody(PCM, 1, 16, 16).array(), 14))
+                .chunk("data", pcm16(1, 2)).bytes()));
+        assertNull(open(new Riff().fmt(PCM, 1, 8).chunk("data", new byte[] { 1, 2 }).bytes()));
+        assertNull(open(new Riff().fmt(PCM, 3, 16).chunk("data", pcm16(1, 2, 3)).bytes()));
+        assertNull(open(new Riff().chunk("data", pcm16(1, 2)).fmt(PCM, 1, 16).bytes()));
+        assertNull(open(new Riff().fmt(PCM, 1, 16).bytes()));
+        assertNull(open("not a wave file".getBytes(StandardCharsets.US_ASCII)));
+        assertNotNull(open(new Riff().fmt(PCM, 1, 16).chunk("data", pcm16(1, 2)).bytes()));
+    }
+
+}